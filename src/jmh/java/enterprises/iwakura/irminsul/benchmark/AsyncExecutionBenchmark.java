@@ -0,0 +1,73 @@
+package enterprises.iwakura.irminsul.benchmark;
+
+import enterprises.iwakura.irminsul.IrminsulDatabaseService;
+import enterprises.iwakura.irminsul.entity.Company;
+import enterprises.iwakura.irminsul.repository.CompanyRepository;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares asynchronous transactions ran on platform thread pool and on virtual threads. Each invocation submits a
+ * burst of short read-only transactions and waits for all of them. Virtual threads require Java 21 or higher; on older
+ * runtimes both modes use platform threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class AsyncExecutionBenchmark {
+
+    private static final int TRANSACTIONS_PER_INVOCATION = 1000;
+
+    @Param({"false", "true"})
+    private boolean useVirtualThreads;
+
+    private IrminsulDatabaseService databaseService;
+    private CompanyRepository companyRepository;
+    private Long companyId;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        final var configuration = BenchmarkDatabase.createConfiguration("async_execution");
+        configuration.setUseVirtualThreads(useVirtualThreads);
+        configuration.setAsyncQueueSize(TRANSACTIONS_PER_INVOCATION);
+        databaseService = BenchmarkDatabase.createDatabaseService(configuration);
+        companyRepository = new CompanyRepository(databaseService);
+        companyId = companyRepository.save(Company.create("Benchmark Company")).getId();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        databaseService.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TRANSACTIONS_PER_INVOCATION)
+    public void findByIdBurst() {
+        final var futures = new CompletableFuture<?>[TRANSACTIONS_PER_INVOCATION];
+        for (int i = 0; i < futures.length; i++) {
+            futures[i] = databaseService.runInReadOnlyTransactionAsync(session -> {
+                return companyRepository.findById(companyId);
+            });
+        }
+        CompletableFuture.allOf(futures).join();
+    }
+}
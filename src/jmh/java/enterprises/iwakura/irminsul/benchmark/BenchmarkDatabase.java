@@ -0,0 +1,51 @@
+package enterprises.iwakura.irminsul.benchmark;
+
+import enterprises.iwakura.irminsul.DatabaseServiceConfiguration;
+import enterprises.iwakura.irminsul.IrminsulDatabaseService;
+import enterprises.iwakura.irminsul.entity.Company;
+import enterprises.iwakura.irminsul.entity.Employee;
+
+import org.hibernate.tool.schema.Action;
+
+/**
+ * Creates database services backed by in-process H2 database for benchmarks.
+ */
+public final class BenchmarkDatabase {
+
+    private BenchmarkDatabase() {
+    }
+
+    /**
+     * Creates a new configuration pointing to a fresh in-memory H2 database.
+     *
+     * @param databaseName the name of the in-memory database
+     *
+     * @return the configuration
+     */
+    public static DatabaseServiceConfiguration createConfiguration(String databaseName) {
+        return DatabaseServiceConfiguration.builder()
+                .jdbcDriver("org.h2.Driver")
+                .dialect("org.hibernate.dialect.H2Dialect")
+                .url("jdbc:h2:mem:" + databaseName + ";DB_CLOSE_DELAY=-1")
+                .username("sa")
+                .password("")
+                .hbm2ddlAuto(Action.CREATE)
+                .build();
+    }
+
+    /**
+     * Creates and initializes a new database service with the test entities.
+     *
+     * @param configuration the configuration to use
+     *
+     * @return the initialized database service
+     */
+    public static IrminsulDatabaseService createDatabaseService(DatabaseServiceConfiguration configuration) {
+        final var databaseService = new IrminsulDatabaseService(configuration);
+        databaseService.initialize(
+                Company.class,
+                Employee.class
+        );
+        return databaseService;
+    }
+}
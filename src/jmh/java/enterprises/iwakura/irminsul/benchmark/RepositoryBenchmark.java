@@ -0,0 +1,197 @@
+package enterprises.iwakura.irminsul.benchmark;
+
+import enterprises.iwakura.irminsul.IrminsulDatabaseService;
+import enterprises.iwakura.irminsul.entity.Company;
+import enterprises.iwakura.irminsul.repository.CompanyRepository;
+import enterprises.iwakura.irminsul.repository.PreparedCriteria;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the {@link enterprises.iwakura.irminsul.repository.BaseRepository} and
+ * {@link enterprises.iwakura.irminsul.repository.RepositoryExtension} methods. The benchmarks run at 1, 4 and 16
+ * threads through the nested subclasses. Each benchmark runs in its own fork, so writes of one benchmark do not affect
+ * the other ones.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public abstract class RepositoryBenchmark {
+
+    private static final int COMPANY_COUNT = 1000;
+    private static final int BATCH_SIZE = 10;
+
+    private IrminsulDatabaseService databaseService;
+    private CompanyRepository companyRepository;
+    private PreparedCriteria<Company> byName;
+    private long firstCompanyId;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        databaseService = BenchmarkDatabase.createDatabaseService(BenchmarkDatabase.createConfiguration("repository"));
+        companyRepository = new CompanyRepository(databaseService);
+
+        final var companies = new ArrayList<Company>(COMPANY_COUNT);
+        for (int i = 0; i < COMPANY_COUNT; i++) {
+            companies.add(Company.create("Company " + i));
+        }
+        firstCompanyId = companyRepository.insertAll(companies).get(0).getId();
+        byName = companyRepository.prepareCriteria((root, query, cb) -> cb.equal(root.get("name"), cb.parameter(String.class, "name")));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        databaseService.shutdown();
+    }
+
+    @Benchmark
+    public Object findById() {
+        return companyRepository.findById(randomCompanyId());
+    }
+
+    @Benchmark
+    public boolean existsById() {
+        return companyRepository.existsById(randomCompanyId());
+    }
+
+    /**
+     * Baseline of {@link #existsById()}, counting the matching rows with a per-call built HQL.
+     */
+    @Benchmark
+    public boolean existsByIdCount() {
+        final var id = randomCompanyId();
+        return databaseService.runInReadOnlyTransaction(session -> {
+            final var hql = "SELECT COUNT(e) FROM " + Company.class.getSimpleName() + " e WHERE e.id = :id";
+            final Long count = session.createQuery(hql, Long.class).setParameter("id", id).getSingleResult();
+            return count != null && count > 0;
+        });
+    }
+
+    @Benchmark
+    public boolean existsByCriteria() {
+        final var name = "Company 1" + ThreadLocalRandom.current().nextInt(10);
+        return companyRepository.existsByCriteria((root, query, cb) -> cb.like(root.<String>get("name"), name + "%"));
+    }
+
+    /**
+     * Baseline of {@link #existsByCriteria()}, counting all matching rows.
+     */
+    @Benchmark
+    public boolean existsByCriteriaCount() {
+        final var name = "Company 1" + ThreadLocalRandom.current().nextInt(10);
+        return companyRepository.countByCriteria((root, query, cb) -> cb.like(root.<String>get("name"), name + "%")) > 0;
+    }
+
+    @Benchmark
+    public List<Company> findByCriteria() {
+        final var name = "Company " + ThreadLocalRandom.current().nextInt(COMPANY_COUNT);
+        return companyRepository.findByCriteria((root, query, cb) -> cb.equal(root.get("name"), name));
+    }
+
+    @Benchmark
+    public List<CompanySummary> findProjectionsByCriteria() {
+        final var name = "Company 1" + ThreadLocalRandom.current().nextInt(10);
+        return companyRepository.findProjectionsByCriteria(CompanySummary.class,
+                (root, query, cb) -> cb.like(root.<String>get("name"), name + "%"), "id", "name");
+    }
+
+    @Benchmark
+    public List<Company> findByPreparedCriteria() {
+        final var name = "Company " + ThreadLocalRandom.current().nextInt(COMPANY_COUNT);
+        return companyRepository.findByPreparedCriteria(byName, Map.of("name", name));
+    }
+
+    @Benchmark
+    public long countByCriteria() {
+        return companyRepository.countByCriteria((root, query, cb) -> cb.like(root.<String>get("name"), "Company 1%"));
+    }
+
+    @Benchmark
+    public double maxByCriteria() {
+        return companyRepository.maxByCriteria((root, query, cb) -> cb.conjunction(), "id");
+    }
+
+    @Benchmark
+    public List<Company> findByCriteriaPaged() {
+        return companyRepository.findByCriteriaPaged(ThreadLocalRandom.current().nextInt(COMPANY_COUNT / BATCH_SIZE),
+                BATCH_SIZE, (root, query, cb) -> cb.conjunction());
+    }
+
+    @Benchmark
+    public Company save() {
+        return companyRepository.save(Company.create("Saved Company"));
+    }
+
+    @Benchmark
+    public List<Company> saveAll() {
+        return companyRepository.saveAll(createCompanies("Saved Company"));
+    }
+
+    @Benchmark
+    public List<Company> insertAll() {
+        return companyRepository.insertAll(createCompanies("Inserted Company"));
+    }
+
+    @Benchmark
+    public Object emptyTransaction() {
+        return databaseService.runInThreadTransaction(session -> {
+            return null;
+        });
+    }
+
+    @Benchmark
+    public Object nestedJoinedTransactions() {
+        return databaseService.runInThreadTransaction(session -> {
+            return companyRepository.findById(randomCompanyId())
+                    .map(company -> companyRepository.existsById(company.getId()));
+        });
+    }
+
+    private long randomCompanyId() {
+        return firstCompanyId + ThreadLocalRandom.current().nextInt(COMPANY_COUNT);
+    }
+
+    private static List<Company> createCompanies(String name) {
+        final var companies = new ArrayList<Company>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            companies.add(Company.create(name));
+        }
+        return companies;
+    }
+
+    public record CompanySummary(Long id, String name) {
+    }
+
+    @Threads(1)
+    public static class SingleThread extends RepositoryBenchmark {
+    }
+
+    @Threads(4)
+    public static class FourThreads extends RepositoryBenchmark {
+    }
+
+    @Threads(16)
+    public static class SixteenThreads extends RepositoryBenchmark {
+    }
+}
@@ -0,0 +1,71 @@
+package enterprises.iwakura.irminsul.benchmark;
+
+import enterprises.iwakura.irminsul.IrminsulDatabaseService;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the overhead of {@link IrminsulDatabaseService#runInThreadTransaction(java.util.function.Function)} itself,
+ * with no hooks, actions nor debug logging. Run with the GC profiler (enabled by default in the jmh task) and compare
+ * {@code gc.alloc.rate.norm}, the number of bytes allocated per transaction.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class TransactionOverheadBenchmark {
+
+    private IrminsulDatabaseService databaseService;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        databaseService = BenchmarkDatabase.createDatabaseService(
+                BenchmarkDatabase.createConfiguration("transaction_overhead"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        databaseService.shutdown();
+    }
+
+    @Benchmark
+    public Object emptyTransaction() {
+        return databaseService.runInThreadTransaction(session -> {
+            return null;
+        });
+    }
+
+    @Benchmark
+    public Object emptyReadOnlyTransaction() {
+        return databaseService.runInReadOnlyTransaction(session -> {
+            return null;
+        });
+    }
+
+    @Benchmark
+    public Object nestedJoinedTransactions() {
+        return databaseService.runInThreadTransaction(session -> {
+            for (int i = 0; i < 10; i++) {
+                databaseService.runInThreadTransaction(nestedSession -> {
+                    return null;
+                });
+            }
+            return null;
+        });
+    }
+}
@@ -6,6 +6,13 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.hibernate.tool.schema.Action;
 
+import enterprises.iwakura.irminsul.cache.CacheRegionConfiguration;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * Database service configuration
  */
@@ -57,6 +64,94 @@ public class DatabaseServiceConfiguration {
      */
     protected @Builder.Default int maxConnections = 10;
 
+    /**
+     * Maximum number of asynchronous transactions waiting for a free executor thread. The number of concurrently
+     * running asynchronous transactions is capped at {@link #maxConnections}
+     */
+    protected @Builder.Default int asyncQueueSize = 1000;
+
+    /**
+     * If asynchronous transactions should run on virtual threads instead of a platform thread pool. Requires Java 21
+     * or higher, otherwise platform threads are used
+     */
+    protected @Builder.Default boolean useVirtualThreads = false;
+
+    /**
+     * Retry policy of the outermost transactions. By default, transactions are not retried
+     */
+    protected @Builder.Default TransactionRetryPolicy retryPolicy = new TransactionRetryPolicy();
+
+    /**
+     * Number of statements sent to the database in one JDBC batch. Bulk repository methods also flush the session
+     * after this many entities. Zero or less disables JDBC batching, which is the default. Values around 20 to 50
+     * usually pay off for bulk inserts and updates
+     */
+    protected @Builder.Default int jdbcBatchSize = 0;
+
+    /**
+     * If Hibernate should order inserts by entity type, so more of them may be batched together. Applies only when
+     * {@link #jdbcBatchSize} is enabled
+     */
+    protected @Builder.Default boolean orderInserts = true;
+
+    /**
+     * If Hibernate should order updates by entity type and ID, so more of them may be batched together. Applies only
+     * when {@link #jdbcBatchSize} is enabled
+     */
+    protected @Builder.Default boolean orderUpdates = true;
+
+    /**
+     * If Hibernate should cache the SQL translation of criteria queries, so executing the same criteria again skips the
+     * translation. Disabled by default, as criteria with literal values instead of parameters produce a cached plan for
+     * each distinct value. {@link enterprises.iwakura.irminsul.repository.PreparedCriteria} are rendered to HQL, whose
+     * translation is cached regardless of this setting
+     */
+    protected @Builder.Default boolean criteriaPlanCacheEnabled = false;
+
+    /**
+     * Default JDBC fetch size of streaming queries, such as
+     * {@link enterprises.iwakura.irminsul.repository.BaseRepository#streamAll()}. Streams in their own session clear
+     * it after this many rows
+     */
+    protected @Builder.Default int streamFetchSize = 1000;
+
+    /**
+     * Number of IDs loaded by one query of
+     * {@link enterprises.iwakura.irminsul.repository.BaseRepository#findAllById(java.util.Collection)}, 0 to use
+     * Hibernate's default based on the dialect
+     */
+    protected @Builder.Default int multiLoadBatchSize = 0;
+
+    /**
+     * If Hibernate's second-level cache should be enabled. Requires {@code org.hibernate.orm:hibernate-jcache} and
+     * a JCache provider, such as Caffeine JCache or Ehcache, on the classpath. Only entities annotated with
+     * {@link jakarta.persistence.Cacheable} or {@link org.hibernate.annotations.Cache} are cached
+     */
+    protected @Builder.Default boolean secondLevelCacheEnabled = false;
+
+    /**
+     * If Hibernate's query cache should be enabled, so results of
+     * {@link enterprises.iwakura.irminsul.repository.BaseRepository#findByCriteria} are cached. Requires
+     * {@link #secondLevelCacheEnabled}
+     */
+    protected @Builder.Default boolean queryCacheEnabled = false;
+
+    /**
+     * Class name of the JCache caching provider, or null to use the only provider on the classpath
+     */
+    protected @Builder.Default String cacheProvider = null;
+
+    /**
+     * Configuration of second-level cache regions not found in {@link #cacheRegions}
+     */
+    protected @Builder.Default CacheRegionConfiguration defaultCacheRegion = new CacheRegionConfiguration();
+
+    /**
+     * Configurations of second-level cache regions, keyed by the region name. The region name of an entity is its
+     * fully qualified class name, unless specified by {@link org.hibernate.annotations.Cache#region()}
+     */
+    protected @Builder.Default Map<String, CacheRegionConfiguration> cacheRegions = new HashMap<>();
+
     /**
      * Charset to use for database operations
      */
@@ -71,4 +166,15 @@ public class DatabaseServiceConfiguration {
      * The HBM2DDL auto action to perform on startup
      */
     protected @Builder.Default Action hbm2ddlAuto = Action.NONE;
+
+    /**
+     * JDBC URLs of read replicas. If not empty, read-only transactions are routed to the replicas. The replicas use the
+     * same driver, dialect, credentials and pool sizes as the primary database
+     */
+    protected @Builder.Default List<String> replicaUrls = new ArrayList<>();
+
+    /**
+     * Strategy for selecting a read replica for read-only transactions
+     */
+    protected @Builder.Default ReplicaSelectionStrategy replicaSelectionStrategy = ReplicaSelectionStrategy.ROUND_ROBIN;
 }
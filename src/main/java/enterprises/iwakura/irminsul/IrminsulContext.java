@@ -1,26 +1,73 @@
 package enterprises.iwakura.irminsul;
 
+import enterprises.iwakura.irminsul.exception.TransactionTimeoutException;
+import jakarta.persistence.Query;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
+import org.hibernate.FlushMode;
 import org.hibernate.Session;
 import org.hibernate.Transaction;
+import org.hibernate.jpa.SpecHints;
+import org.hibernate.query.MutationQuery;
 
+import java.sql.Connection;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Context for thread local within {@link IrminsulDatabaseService}
+ * Context for thread local within {@link IrminsulDatabaseService}. The context lives only for the duration of a
+ * transaction and is always removed afterward, so it is safe to use on virtual threads as well.
  */
 @Data
 public final class IrminsulContext {
 
     private static final ThreadLocal<IrminsulContext> THREAD_LOCAL = new ThreadLocal<>();
+    private static final AtomicLong ID_SEQUENCE = new AtomicLong();
 
-    private final Long ID = System.nanoTime();
-    private final List<Runnable> afterCommitActions = new ArrayList<>();
-    private final List<Runnable> rollbackActions = new ArrayList<>();
+    @Getter(AccessLevel.NONE)
+    private final long ID = ID_SEQUENCE.incrementAndGet();
+    // Action lists are created lazily, most transactions do not have any actions
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private List<Runnable> afterCommitActions;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private List<Runnable> rollbackActions;
     private Session session;
     private Transaction transaction;
+    private boolean readOnly;
+    private String name = TransactionOptions.DEFAULT_NAME;
+    @Setter(AccessLevel.NONE)
+    private Duration timeout;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private long deadlineNanos;
+    // Set once a failure rolled back to a savepoint marked the Hibernate transaction as rollback-only
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private boolean rollbackOnlyCleared;
+
+    /**
+     * Returns the ID of this IrminsulContext, unique within the JVM.
+     *
+     * @return the ID
+     */
+    public Long getID() {
+        return ID;
+    }
+
+    /**
+     * Returns the ID of this IrminsulContext without boxing it, for the transaction fast path.
+     *
+     * @return the ID
+     */
+    public long getPrimitiveID() {
+        return ID;
+    }
 
     /**
      * Checks if the current thread has an IrminsulContext.
@@ -37,8 +84,21 @@ public final class IrminsulContext {
      * @return the current IrminsulContext
      */
     public static IrminsulContext getCurrent() {
-        return Optional.ofNullable(THREAD_LOCAL.get())
-                       .orElseThrow(() -> new IllegalStateException("No IrminsulContext found for the current thread"));
+        IrminsulContext context = THREAD_LOCAL.get();
+        if (context == null) {
+            throw new IllegalStateException("No IrminsulContext found for the current thread");
+        }
+        return context;
+    }
+
+    /**
+     * Returns the current IrminsulContext for the current thread, or null if there is none. Unlike calling
+     * {@link #hasCurrent()} and {@link #getCurrent()}, looks up the thread local only once.
+     *
+     * @return the current IrminsulContext, or null
+     */
+    public static IrminsulContext getCurrentOrNull() {
+        return THREAD_LOCAL.get();
     }
 
     /**
@@ -56,12 +116,126 @@ public final class IrminsulContext {
     }
 
     /**
-     * Begins a transaction for the current IrminsulContext if none exists.
+     * Suspends the current IrminsulContext, so a new one may be initialized for the current thread. The suspended
+     * context must be resumed with {@link #resume(IrminsulContext)}.
+     *
+     * @return the suspended IrminsulContext
      */
-    public void beginTransaction() {
+    public static IrminsulContext suspendCurrent() {
         IrminsulContext context = getCurrent();
-        if (context.transaction == null) {
-            context.transaction = context.session.beginTransaction();
+        THREAD_LOCAL.remove();
+        return context;
+    }
+
+    /**
+     * Resumes the suspended IrminsulContext for the current thread.
+     *
+     * @param context the IrminsulContext suspended by {@link #suspendCurrent()}
+     */
+    public static void resume(IrminsulContext context) {
+        THREAD_LOCAL.set(context);
+    }
+
+    /**
+     * Starts the timeout of this IrminsulContext, the deadline is computed from the current time.
+     *
+     * @param timeout the timeout of the transaction
+     */
+    public void startTimeout(Duration timeout) {
+        this.timeout = timeout;
+        this.deadlineNanos = System.nanoTime() + timeout.toNanos();
+    }
+
+    /**
+     * Checks if this IrminsulContext has a timeout and it has been exceeded.
+     *
+     * @return true if the timeout has been exceeded, false otherwise
+     */
+    public boolean isTimeoutExceeded() {
+        return timeout != null && deadlineNanos - System.nanoTime() <= 0;
+    }
+
+    /**
+     * Checks that the timeout of this IrminsulContext has not been exceeded.
+     *
+     * @throws TransactionTimeoutException if the timeout has been exceeded
+     */
+    public void checkTimeout() {
+        if (isTimeoutExceeded()) {
+            throw new TransactionTimeoutException(ID, timeout);
+        }
+    }
+
+    /**
+     * Applies the remaining time of this IrminsulContext's timeout as the query timeout
+     * ({@code jakarta.persistence.query.timeout}). JDBC query timeouts have the precision of seconds, so the
+     * remaining time is rounded up to whole seconds. Does nothing if this IrminsulContext has no timeout.
+     *
+     * @param query the query to apply the timeout to
+     * @param <Q>   the query type
+     *
+     * @return the same query
+     *
+     * @throws TransactionTimeoutException if the timeout has been exceeded
+     */
+    public <Q extends Query> Q applyQueryTimeout(Q query) {
+        if (timeout != null) {
+            checkTimeout();
+            query.setHint(SpecHints.HINT_SPEC_QUERY_TIMEOUT, getRemainingTimeoutSeconds() * 1000);
+        }
+        return query;
+    }
+
+    /**
+     * Applies the remaining time of this IrminsulContext's timeout as the query timeout of a Hibernate mutation query,
+     * see {@link #applyQueryTimeout(Query)}. Does nothing if this IrminsulContext has no timeout.
+     *
+     * @param query the mutation query to apply the timeout to
+     *
+     * @return the same query
+     *
+     * @throws TransactionTimeoutException if the timeout has been exceeded
+     */
+    public MutationQuery applyMutationQueryTimeout(MutationQuery query) {
+        if (timeout != null) {
+            checkTimeout();
+            query.setTimeout(getRemainingTimeoutSeconds());
+        }
+        return query;
+    }
+
+    /**
+     * Returns the remaining time of this IrminsulContext's timeout, rounded up to whole seconds.
+     *
+     * @return the remaining seconds, at least 1
+     */
+    private int getRemainingTimeoutSeconds() {
+        final long remainingMillis = Duration.ofNanos(deadlineNanos - System.nanoTime()).toMillis();
+        return (int) Math.min(Integer.MAX_VALUE / 1000, Math.max(1, (remainingMillis + 999) / 1000));
+    }
+
+    /**
+     * Begins a transaction for the current IrminsulContext if none exists. If the context is read-only, the session
+     * is switched to default read-only with {@link FlushMode#MANUAL} and the JDBC connection is marked as read-only.
+     * If the context has a timeout, its remaining time is set as the Hibernate transaction timeout, which applies it
+     * as the statement timeout of loads by ID, multi-loads and flushes as well.
+     */
+    public void beginTransaction() {
+        if (transaction == null) {
+            if (readOnly) {
+                session.setDefaultReadOnly(true);
+                session.setHibernateFlushMode(FlushMode.MANUAL);
+            }
+            transaction = session.getTransaction();
+            if (timeout != null) {
+                checkTimeout();
+                transaction.setTimeout(getRemainingTimeoutSeconds());
+            }
+            transaction.begin();
+            if (readOnly) {
+                // The connection pool resets the read-only flag once the connection is returned
+                session.doWork(connection -> connection.setReadOnly(true));
+            }
         }
     }
 
@@ -71,44 +245,101 @@ public final class IrminsulContext {
      * @throws IllegalStateException if no transaction is found
      */
     public void commit() {
-        IrminsulContext context = getCurrent();
-        if (context.transaction == null) {
+        if (transaction == null) {
             throw new IllegalStateException("No transaction found to commit");
         }
-        context.transaction.commit();
+        if (rollbackOnlyCleared && transaction.getRollbackOnly()) {
+            // Hibernate cannot clear the mark, so the changes are committed on the connection directly. Ending the
+            // Hibernate transaction with a rollback then has nothing left to roll back and releases the connection
+            session.flush();
+            session.doWork(Connection::commit);
+            transaction.rollback();
+            return;
+        }
+        transaction.commit();
+    }
+
+    /**
+     * Clears the rollback-only mark, which Hibernate sets when it converts a database failure, so the transaction
+     * commits anyway. Only for failures within a nested transaction which were rolled back to its savepoint, as the
+     * changes made before the savepoint are still valid.
+     */
+    void clearRollbackOnly() {
+        rollbackOnlyCleared = true;
     }
 
     /**
      * Rollbacks the current transaction.
      */
     public void rollback() {
-        IrminsulContext context = getCurrent();
-        if (context.transaction == null) {
+        if (transaction == null) {
             throw new IllegalStateException("No transaction found to rollback");
         }
-        context.transaction.rollback();
+        transaction.rollback();
+    }
+
+    /**
+     * Returns the actions to be executed after the transaction is committed.
+     *
+     * @return the after commit actions, empty if there are none
+     */
+    public List<Runnable> getAfterCommitActions() {
+        return afterCommitActions != null ? afterCommitActions : List.of();
+    }
+
+    /**
+     * Returns the actions to be executed on transaction rollback.
+     *
+     * @return the rollback actions, empty if there are none
+     */
+    public List<Runnable> getRollbackActions() {
+        return rollbackActions != null ? rollbackActions : List.of();
     }
 
     /**
      * Runs all after commit actions for the current IrminsulContext and clears the list.
      */
     public void runAfterCommitActions() {
-        IrminsulContext context = getCurrent();
-        for (Runnable action : context.afterCommitActions) {
+        if (afterCommitActions == null) {
+            return;
+        }
+        for (Runnable action : afterCommitActions) {
             action.run();
         }
-        context.afterCommitActions.clear();
+        afterCommitActions.clear();
     }
 
     /**
      * Runs all rollback actions for the current IrminsulContext and clears the list.
      */
     public void runAfterRollbackActions() {
-        IrminsulContext context = getCurrent();
-        for (Runnable action : context.rollbackActions) {
+        if (rollbackActions == null) {
+            return;
+        }
+        for (Runnable action : rollbackActions) {
             action.run();
         }
-        context.rollbackActions.clear();
+        rollbackActions.clear();
+    }
+
+    /**
+     * Discards the actions added after the given marks, used when a nested transaction is rolled back to its
+     * savepoint. The discarded rollback actions are run, the discarded after commit actions are not.
+     *
+     * @param afterCommitActionsMark the number of after commit actions when the nested transaction started
+     * @param rollbackActionsMark    the number of rollback actions when the nested transaction started
+     */
+    public void rollbackToActionMarks(int afterCommitActionsMark, int rollbackActionsMark) {
+        if (afterCommitActions != null) {
+            afterCommitActions.subList(afterCommitActionsMark, afterCommitActions.size()).clear();
+        }
+        if (rollbackActions != null) {
+            final var nestedRollbackActions = rollbackActions.subList(rollbackActionsMark, rollbackActions.size());
+            for (Runnable action : nestedRollbackActions) {
+                action.run();
+            }
+            nestedRollbackActions.clear();
+        }
     }
 
     /**
@@ -124,7 +355,11 @@ public final class IrminsulContext {
      * @param action the action to be executed
      */
     public static void addAfterCommitAction(Runnable action) {
-        getCurrent().afterCommitActions.add(action);
+        IrminsulContext context = getCurrent();
+        if (context.afterCommitActions == null) {
+            context.afterCommitActions = new ArrayList<>();
+        }
+        context.afterCommitActions.add(action);
     }
 
     /**
@@ -133,6 +368,10 @@ public final class IrminsulContext {
      * @param action the action to be executed
      */
     public static void addRollbackAction(Runnable action) {
-        getCurrent().rollbackActions.add(action);
+        IrminsulContext context = getCurrent();
+        if (context.rollbackActions == null) {
+            context.rollbackActions = new ArrayList<>();
+        }
+        context.rollbackActions.add(action);
     }
 }
@@ -1,20 +1,47 @@
 package enterprises.iwakura.irminsul;
 
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+import org.hibernate.FlushMode;
 import org.hibernate.HibernateException;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.boot.registry.BootstrapServiceRegistryBuilder;
 import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cache.spi.RegionFactory;
 import org.hibernate.cfg.Configuration;
 import org.hibernate.cfg.Environment;
 import org.hibernate.cfg.JdbcSettings;
+import org.hibernate.query.Query;
+import org.hibernate.tool.schema.Action;
 
+import enterprises.iwakura.irminsul.cache.IrminsulJCacheRegionFactory;
 import enterprises.iwakura.irminsul.exception.InitializationException;
 import enterprises.iwakura.irminsul.exception.TransactionException;
+import enterprises.iwakura.irminsul.exception.TransactionTimeoutException;
+import enterprises.iwakura.irminsul.metrics.TransactionMetrics;
+import enterprises.iwakura.irminsul.metrics.TransactionPhase;
+import enterprises.iwakura.irminsul.util.BoundedVirtualThreadExecutor;
 import jakarta.persistence.Entity;
 import liquibase.Contexts;
 import liquibase.LabelExpression;
@@ -45,6 +72,26 @@ public class IrminsulDatabaseService {
      */
     protected SessionFactory sessionFactory;
 
+    /**
+     * The Hibernate session factories of read replicas, used for read-only transactions. Empty if no replicas are
+     * configured.
+     */
+    protected List<ReplicaSessionFactory> replicaSessionFactories = List.of();
+
+    /**
+     * The metrics recording latencies of transaction phases. Does not record anything by default, see
+     * {@link #setTransactionMetrics(TransactionMetrics)}.
+     */
+    protected TransactionMetrics transactionMetrics = TransactionMetrics.NOOP;
+
+    /**
+     * The executor used for asynchronous transactions.
+     */
+    protected ExecutorService asyncExecutor;
+
+    private final AtomicInteger replicaIndex = new AtomicInteger();
+    private final LongAdder transactionRetryCount = new LongAdder();
+
     /**
      * Creates a new DatabaseService instance without any configuration. You must initialize before invoking
      * {@link #initialize(Class[])} or {@link #initialize(ClassLoader, Class[])}.
@@ -83,26 +130,62 @@ public class IrminsulDatabaseService {
         }
 
         log.info("Initializing Irminsul's Hibernate...");
+        final var replicas = new ArrayList<ReplicaSessionFactory>();
         try {
-            Configuration configuration = new Configuration();
-            populateHibernateConfiguration(configuration);
-            populateEntityClasses(configuration, entityClasses);
+            sessionFactory = createSessionFactory(classLoader, entityClasses, null);
 
-            BootstrapServiceRegistryBuilder bootstrapServiceRegistry = new BootstrapServiceRegistryBuilder();
-            configureBootstrapServiceRegistry(bootstrapServiceRegistry, classLoader);
-
-            StandardServiceRegistryBuilder serviceRegistry = new StandardServiceRegistryBuilder(
-                bootstrapServiceRegistry.build()
-            );
-            applyHibernateConfiguration(serviceRegistry, configuration.getProperties());
-
-            sessionFactory = buildSessionFactory(configuration, serviceRegistry);
+            final var replicaUrls = databaseConfiguration.getReplicaUrls();
+            if (replicaUrls != null) {
+                for (String replicaUrl : replicaUrls) {
+                    logIfEnabled("Initializing read replica %s".formatted(replicaUrl));
+                    replicas.add(new ReplicaSessionFactory(replicaUrl,
+                        createSessionFactory(classLoader, entityClasses, replicaUrl)));
+                }
+            }
+            replicaSessionFactories = List.copyOf(replicas);
+            asyncExecutor = createAsyncExecutor();
             log.info("Irminsul's Hibernate successfully initialized");
         } catch (Exception e) {
+            // Do not leak connection pools of already initialized session factories
+            replicas.forEach(replica -> replica.getSessionFactory().close());
+            if (sessionFactory != null) {
+                sessionFactory.close();
+            }
             throw new InitializationException("Cannot initialize Irminsul's Hibernate", e);
         }
     }
 
+    /**
+     * Creates a Hibernate session factory with the given entity classes.
+     *
+     * @param classLoader   the class loader for Hibernate to use
+     * @param entityClasses the entity classes to initialize
+     * @param replicaUrl    the JDBC URL of the read replica, or null for the primary database
+     *
+     * @return the created session factory
+     */
+    protected SessionFactory createSessionFactory(ClassLoader classLoader, Class<?>[] entityClasses,
+        String replicaUrl) {
+        Configuration configuration = new Configuration();
+        populateHibernateConfiguration(configuration);
+        if (replicaUrl != null) {
+            populateReplicaHibernateProperties(configuration.getProperties(), replicaUrl);
+        }
+        populateEntityClasses(configuration, entityClasses);
+
+        BootstrapServiceRegistryBuilder bootstrapServiceRegistry = new BootstrapServiceRegistryBuilder();
+        configureBootstrapServiceRegistry(bootstrapServiceRegistry, classLoader);
+
+        StandardServiceRegistryBuilder serviceRegistry = new StandardServiceRegistryBuilder(
+            bootstrapServiceRegistry.build()
+        );
+        applyHibernateConfiguration(serviceRegistry, configuration.getProperties());
+
+        final var factory = buildSessionFactory(configuration, serviceRegistry);
+        ReadOnlyWriteListener.register(factory);
+        return factory;
+    }
+
     /**
      * Runs Liquibase migrations using the specified changelog file and resource accessor.
      *
@@ -155,6 +238,16 @@ public class IrminsulDatabaseService {
      * Shuts down the database service and closes the session factory.
      */
     public void shutdown() {
+        if (asyncExecutor != null) {
+            shutdownAsyncExecutor();
+        }
+        for (ReplicaSessionFactory replica : replicaSessionFactories) {
+            replica.getSessionFactory().close();
+        }
+        if (!replicaSessionFactories.isEmpty()) {
+            log.info("Irminsul's Hibernate replica session factories closed");
+            replicaSessionFactories = List.of();
+        }
         if (sessionFactory != null) {
             sessionFactory.close();
             log.info("Irminsul's Hibernate session factory closed");
@@ -170,6 +263,16 @@ public class IrminsulDatabaseService {
         return sessionFactory != null && !sessionFactory.isClosed();
     }
 
+    /**
+     * Sets the metrics recording latencies of transaction phases, keyed by {@link TransactionOptions#getName()}. For
+     * example, {@link enterprises.iwakura.irminsul.metrics.HistogramTransactionMetrics}.
+     *
+     * @param transactionMetrics the transaction metrics, or null to disable recording
+     */
+    public void setTransactionMetrics(TransactionMetrics transactionMetrics) {
+        this.transactionMetrics = transactionMetrics != null ? transactionMetrics : TransactionMetrics.NOOP;
+    }
+
     /**
      * Runs a transaction in the current thread context.
      *
@@ -177,41 +280,528 @@ public class IrminsulDatabaseService {
      * @param <R>         the result type
      *
      * @return the result of the transaction
+     *
+     * @throws IllegalStateException if invoked within a read-only Irminsul context
      */
     public <R> R runInThreadTransaction(Function<Session, R> transaction) {
-        // Run the transaction in current Irminsul context
-        if (IrminsulContext.hasCurrent()) {
-            final var ctx = IrminsulContext.getCurrent();
-            logIfEnabled("[%d] Running transaction in current Irminsul context".formatted(ctx.getID()));
+        return runInTransaction(TransactionOptions.DEFAULT, transaction);
+    }
+
+    /**
+     * Runs a transaction in the current thread context without returning a result.
+     *
+     * @param transaction the transaction to run
+     */
+    public void runInThreadTransaction(Consumer<Session> transaction) {
+        runInThreadTransaction(session -> {
+            transaction.accept(session);
+            return null;
+        });
+    }
+
+    /**
+     * Runs a transaction in the current thread context with the given options. The
+     * {@link TransactionOptions#getPropagation()} defines how the transaction behaves within an existing Irminsul
+     * context:
+     * <ul>
+     *     <li>{@link TransactionPropagation#REQUIRED} joins the existing transaction</li>
+     *     <li>{@link TransactionPropagation#REQUIRES_NEW} suspends the existing transaction and runs in a new session
+     *     with its own connection. Keep in mind that the suspended transaction holds its connection meanwhile.</li>
+     *     <li>{@link TransactionPropagation#NESTED} runs within the existing transaction using a JDBC savepoint. On
+     *     failure, the transaction is rolled back to the savepoint, its rollback actions are run and its after commit
+     *     actions are discarded. The session is cleared afterward, so entities loaded before become detached. The
+     *     exception is rethrown wrapped in {@link TransactionException}, and the outer transaction may continue if
+     *     it catches it.</li>
+     * </ul>
+     *
+     * @param options     the transaction options
+     * @param transaction the transaction to run
+     * @param <R>         the result type
+     *
+     * @return the result of the transaction
+     */
+    public <R> R runInThreadTransaction(TransactionOptions options, Function<Session, R> transaction) {
+        return runInTransaction(options, transaction);
+    }
+
+    /**
+     * Runs a transaction in the current thread context with the given options without returning a result.
+     *
+     * @param options     the transaction options
+     * @param transaction the transaction to run
+     *
+     * @see #runInThreadTransaction(TransactionOptions, Function)
+     */
+    public void runInThreadTransaction(TransactionOptions options, Consumer<Session> transaction) {
+        runInThreadTransaction(options, session -> {
+            transaction.accept(session);
+            return null;
+        });
+    }
+
+    /**
+     * Runs a read-only transaction in the current thread context. The session is marked as default read-only with
+     * {@link FlushMode#MANUAL}, so Hibernate does not keep dirty-checking snapshots of the loaded entities and does
+     * not flush on commit. The JDBC connection is marked as read-only as well.<br>
+     * If read replicas are configured, the transaction runs on a replica selected by
+     * {@link DatabaseServiceConfiguration#getReplicaSelectionStrategy()}. Keep in mind that replicas may lag behind
+     * the primary database; use {@link TransactionOptions#isPrimary()} for reads which must see the latest changes.<br>
+     * If invoked within an existing Irminsul context (read-only or not), the existing context is joined. Running a
+     * read-write transaction (for example, saving an entity using a repository) within a read-only context fails
+     * fast with {@link IllegalStateException}, and so does persisting, merging or removing an entity directly through
+     * the session.
+     *
+     * @param transaction the transaction to run
+     * @param <R>         the result type
+     *
+     * @return the result of the transaction
+     */
+    public <R> R runInReadOnlyTransaction(Function<Session, R> transaction) {
+        return runInTransaction(TransactionOptions.READ_ONLY, transaction);
+    }
+
+    /**
+     * Runs a read-only transaction in the current thread context without returning a result.
+     *
+     * @param transaction the transaction to run
+     *
+     * @see #runInReadOnlyTransaction(Function)
+     */
+    public void runInReadOnlyTransaction(Consumer<Session> transaction) {
+        runInReadOnlyTransaction(session -> {
+            transaction.accept(session);
+            return null;
+        });
+    }
+
+    /**
+     * Runs a transaction asynchronously on the executor of this service. At most
+     * {@link DatabaseServiceConfiguration#getMaxConnections()} asynchronous transactions run concurrently, others wait
+     * in a queue of {@link DatabaseServiceConfiguration#getAsyncQueueSize()} size. If the queue is full, the returned
+     * future is completed exceptionally with {@link RejectedExecutionException}.<br>
+     * The transaction always runs in a new Irminsul context, even if invoked within an existing one. The returned
+     * future is completed after the after commit or rollback actions have been run.
+     *
+     * @param transaction the transaction to run
+     * @param <R>         the result type
+     *
+     * @return the future completed with the result of the transaction
+     */
+    public <R> CompletableFuture<R> runInTransactionAsync(Function<Session, R> transaction) {
+        return supplyAsync(() -> runInThreadTransaction(transaction));
+    }
+
+    /**
+     * Runs a transaction asynchronously on the executor of this service without returning a result.
+     *
+     * @param transaction the transaction to run
+     *
+     * @return the future completed after the transaction
+     *
+     * @see #runInTransactionAsync(Function)
+     */
+    public CompletableFuture<Void> runInTransactionAsync(Consumer<Session> transaction) {
+        return runInTransactionAsync(session -> {
+            transaction.accept(session);
+            return null;
+        });
+    }
+
+    /**
+     * Runs a read-only transaction asynchronously on the executor of this service.
+     *
+     * @param transaction the transaction to run
+     * @param <R>         the result type
+     *
+     * @return the future completed with the result of the transaction
+     *
+     * @see #runInTransactionAsync(Function)
+     * @see #runInReadOnlyTransaction(Function)
+     */
+    public <R> CompletableFuture<R> runInReadOnlyTransactionAsync(Function<Session, R> transaction) {
+        return supplyAsync(() -> runInReadOnlyTransaction(transaction));
+    }
+
+    /**
+     * Streams the results of a query, reading them with a forward-only cursor ({@link ScrollableResults}), so they are
+     * not materialized all at once. The stream must be closed, preferably with try-with-resources.<br>
+     * If there is no current Irminsul context, the query runs in its own read-only session and transaction (on a read
+     * replica, if configured), which stay open until the stream is closed. The session is cleared every
+     * {@code fetchSize} rows, so already streamed entities are detached and the persistence context stays bounded.
+     * The session is not bound to the current thread, so the stream may be consumed on any thread, and other
+     * transactions run while the stream is open do not join it. The phases are recorded into
+     * {@link #getTransactionMetrics()}, with the body being the time the stream was open.<br>
+     * If there is a current Irminsul context, the query runs in its session and the session is not cleared. The
+     * stream must be closed before the transaction ends.
+     *
+     * @param queryFactory the function creating the query within the session
+     * @param fetchSize    the JDBC fetch size and the number of rows after which the session is cleared
+     * @param <R>          the result type
+     *
+     * @return the stream of results
+     */
+    public <R> Stream<R> streamInReadOnlyTransaction(Function<Session, Query<R>> queryFactory, int fetchSize) {
+        if (fetchSize < 1) {
+            throw new IllegalArgumentException("Fetch size must be at least 1");
+        }
+
+        final var current = IrminsulContext.getCurrentOrNull();
+        if (current != null) {
+            final var query = current.applyQueryTimeout(queryFactory.apply(current.getSession()));
+            final var results = query.setFetchSize(fetchSize).scroll(ScrollMode.FORWARD_ONLY);
+            return streamResults(results, null, fetchSize).onClose(results::close);
+        }
+
+        final var replica = selectReplica();
+        final var factory = replica != null ? replica.acquire() : sessionFactory;
+        final var ctx = new IrminsulContext();
+        ctx.setReadOnly(true);
+        Session session = null;
+        try {
+            session = factory.openSession();
+            ctx.setSession(session);
+            logIfEnabled("[{}] Begin read-only streaming transaction", ctx.getPrimitiveID());
+            beforeBeginTransaction(ctx);
+            final long beginStart = System.nanoTime();
+            ctx.beginTransaction();
+            transactionMetrics.recordPhase(ctx.getName(), TransactionPhase.BEGIN, System.nanoTime() - beginStart);
+            afterBeginTransaction(ctx);
+
+            final long bodyStart = System.nanoTime();
+            final var results = queryFactory.apply(session)
+                .setFetchSize(fetchSize)
+                .scroll(ScrollMode.FORWARD_ONLY);
+            final var streamSession = session;
+            return streamResults(results, session, fetchSize).onClose(() -> {
+                closeStreamingTransaction(ctx, streamSession, results, replica, bodyStart);
+            });
+        } catch (Throwable throwable) {
+            logIfEnabled("[{}] Exception occurred while opening streaming transaction", ctx.getPrimitiveID(),
+                throwable);
+            try {
+                if (ctx.getTransaction() != null && ctx.getTransaction().isActive()) {
+                    ctx.rollback();
+                }
+            } finally {
+                if (session != null) {
+                    session.close();
+                }
+                if (replica != null) {
+                    replica.release();
+                }
+            }
+            throw new TransactionException(ctx.getPrimitiveID(), throwable);
+        }
+    }
+
+    /**
+     * Wraps the scrollable results into a sequential stream.
+     *
+     * @param results        the scrollable results
+     * @param clearedSession the session to clear every {@code fetchSize} rows, or null
+     * @param fetchSize      the fetch size
+     * @param <R>            the result type
+     *
+     * @return the stream of results
+     */
+    private static <R> Stream<R> streamResults(ScrollableResults<R> results, Session clearedSession, int fetchSize) {
+        final var spliterator = new Spliterators.AbstractSpliterator<R>(Long.MAX_VALUE, Spliterator.ORDERED) {
+            private long count;
+
+            @Override
+            public boolean tryAdvance(Consumer<? super R> action) {
+                // Cleared before the next row is loaded, so the streamed entities stay initialized
+                if (clearedSession != null && count > 0 && count % fetchSize == 0) {
+                    clearedSession.clear();
+                }
+                if (!results.next()) {
+                    return false;
+                }
+                count++;
+                action.accept(results.get());
+                return true;
+            }
+        };
+        return StreamSupport.stream(spliterator, false);
+    }
+
+    /**
+     * Closes the results, the transaction and the session of a stream opened by
+     * {@link #streamInReadOnlyTransaction(Function, int)}.
+     *
+     * @param ctx       the Irminsul context of the streaming transaction
+     * @param session   the session of the streaming transaction
+     * @param results   the scrollable results
+     * @param replica   the replica the session was opened on, or null
+     * @param bodyStart the {@link System#nanoTime()} at which the query was opened
+     */
+    private void closeStreamingTransaction(IrminsulContext ctx, Session session, ScrollableResults<?> results,
+        ReplicaSessionFactory replica, long bodyStart) {
+        final var metrics = transactionMetrics;
+        try {
+            results.close();
+            metrics.recordPhase(ctx.getName(), TransactionPhase.BODY, System.nanoTime() - bodyStart);
+            logIfEnabled("[{}] Committing streaming transaction", ctx.getPrimitiveID());
+            beforeCommitTransaction(ctx);
+            final long commitStart = System.nanoTime();
+            ctx.commit();
+            metrics.recordPhase(ctx.getName(), TransactionPhase.COMMIT, System.nanoTime() - commitStart);
+            afterCommitTransaction(ctx);
+        } catch (Throwable throwable) {
+            logIfEnabled("[{}] Exception occurred while closing streaming transaction, rolling back",
+                ctx.getPrimitiveID(), throwable);
+            beforeRollbackTransaction(ctx);
+            if (ctx.getTransaction().isActive()) {
+                final long rollbackStart = System.nanoTime();
+                ctx.rollback();
+                metrics.recordPhase(ctx.getName(), TransactionPhase.ROLLBACK, System.nanoTime() - rollbackStart);
+            }
+            afterRollbackTransaction(ctx);
+            throw new TransactionException(ctx.getPrimitiveID(), throwable);
+        } finally {
+            try {
+                afterTransactionProcessing(ctx);
+            } finally {
+                session.close();
+                if (replica != null) {
+                    replica.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * Supplies the result of the supplier on the executor of this service.
+     *
+     * @param supplier the supplier to run
+     * @param <R>      the result type
+     *
+     * @return the future completed with the result of the supplier
+     */
+    private <R> CompletableFuture<R> supplyAsync(Supplier<R> supplier) {
+        if (asyncExecutor == null) {
+            throw new IllegalStateException("Irminsul's database service is not initialized");
+        }
+
+        final var future = new CompletableFuture<R>();
+        try {
+            asyncExecutor.execute(() -> {
+                try {
+                    future.complete(supplier.get());
+                } catch (Throwable throwable) {
+                    future.completeExceptionally(throwable);
+                }
+            });
+        } catch (RejectedExecutionException exception) {
+            future.completeExceptionally(exception);
+        }
+        return future;
+    }
+
+    /**
+     * Runs a transaction in the current thread context, either joining the existing Irminsul context or creating a
+     * new one, depending on the transaction options.
+     *
+     * @param options     the transaction options
+     * @param transaction the transaction to run
+     * @param <R>         the result type
+     *
+     * @return the result of the transaction
+     */
+    protected <R> R runInTransaction(TransactionOptions options, Function<Session, R> transaction) {
+        final var ctx = IrminsulContext.getCurrentOrNull();
+        if (ctx != null) {
+            // Run the transaction in a new Irminsul context, resume the current one afterward
+            if (options.getPropagation() == TransactionPropagation.REQUIRES_NEW) {
+                logIfEnabled("[{}] Suspending transaction", ctx.getPrimitiveID());
+                final var suspendedCtx = IrminsulContext.suspendCurrent();
+                try {
+                    return runInNewTransactionWithRetry(options, transaction);
+                } finally {
+                    IrminsulContext.resume(suspendedCtx);
+                    logIfEnabled("[{}] Resumed transaction", ctx.getPrimitiveID());
+                }
+            }
+
+            if (ctx.isReadOnly() && !options.isReadOnly()) {
+                throw new IllegalStateException(
+                    "[%d] Cannot run read-write transaction within read-only Irminsul context"
+                        .formatted(ctx.getPrimitiveID()));
+            }
+
+            if (options.getPropagation() == TransactionPropagation.NESTED) {
+                return runInNestedTransaction(ctx, transaction);
+            }
+
+            // Run the transaction in current Irminsul context
+            logIfEnabled("[{}] Running transaction in current Irminsul context", ctx.getPrimitiveID());
             return transaction.apply(
                 ctx.getSession()); // Exceptions here will be caught and handled in the transaction logic
         }
 
-        // Create new session and transaction
-        try (Session session = sessionFactory.openSession()) {
+        return runInNewTransactionWithRetry(options, transaction);
+    }
+
+    /**
+     * Runs a transaction in a new session and Irminsul context, retrying it on transient errors.
+     *
+     * @param options     the transaction options
+     * @param transaction the transaction to run
+     * @param <R>         the result type
+     *
+     * @return the result of the transaction
+     */
+    private <R> R runInNewTransactionWithRetry(TransactionOptions options, Function<Session, R> transaction) {
+        final var retryPolicy = databaseConfiguration.getRetryPolicy();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return runInNewTransaction(options, transaction);
+            } catch (TransactionException exception) {
+                if (retryPolicy == null || attempt >= retryPolicy.getMaxAttempts()
+                    || exception instanceof TransactionTimeoutException
+                    || !isRetryable(exception.getCause())) {
+                    throw exception;
+                }
+                final long backoffMillis = retryPolicy.computeBackoffMillis(attempt);
+                if (isDebugLogEnabled()) {
+                    log.info("[{}] Transaction failed with retryable exception, retrying in {} ms (attempt {} of {})",
+                        exception.getId(), backoffMillis, attempt + 1, retryPolicy.getMaxAttempts());
+                }
+                transactionRetryCount.increment();
+                transactionMetrics.recordRetry(
+                    options.getName() != null ? options.getName() : TransactionOptions.DEFAULT_NAME);
+                onTransactionRetry(exception, attempt);
+                try {
+                    Thread.sleep(backoffMillis);
+                } catch (InterruptedException interruptedException) {
+                    Thread.currentThread().interrupt();
+                    throw exception;
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs a transaction within the existing Irminsul context using a JDBC savepoint. If the nested transaction fails,
+     * only the entities it touched are restored in the session, see {@link PersistenceContextSnapshot}, and a
+     * rollback-only mark set by Hibernate for the failure is cleared, so the outer transaction may still commit.
+     *
+     * @param ctx         the current Irminsul context
+     * @param transaction the transaction to run
+     * @param <R>         the result type
+     *
+     * @return the result of the transaction
+     */
+    private <R> R runInNestedTransaction(IrminsulContext ctx, Function<Session, R> transaction) {
+        final var session = ctx.getSession();
+        if (!ctx.isReadOnly()) {
+            // Changes made so far must be before the savepoint
+            session.flush();
+        }
+
+        logIfEnabled("[{}] Creating savepoint for nested transaction", ctx.getPrimitiveID());
+        final var savepoint = session.doReturningWork(Connection::setSavepoint);
+        final var snapshot = !ctx.isReadOnly() ? PersistenceContextSnapshot.take(session) : null;
+        final boolean rollbackOnly = session.getTransaction().getRollbackOnly();
+        final int afterCommitActionsMark = ctx.getAfterCommitActions().size();
+        final int rollbackActionsMark = ctx.getRollbackActions().size();
+        try {
+            R result = transaction.apply(session);
+            if (!ctx.isReadOnly()) {
+                session.flush();
+            }
+            session.doWork(connection -> connection.releaseSavepoint(savepoint));
+            return result;
+        } catch (Throwable throwable) {
+            logIfEnabled("[{}] Exception occurred while running nested transaction, rolling back to savepoint",
+                ctx.getPrimitiveID(), throwable);
+            session.doWork(connection -> connection.rollback(savepoint));
+            if (snapshot != null) {
+                // Persistence context may contain changes which were rolled back
+                try {
+                    snapshot.restore(session);
+                } catch (RuntimeException restoreException) {
+                    throwable.addSuppressed(restoreException);
+                    session.clear();
+                }
+                if (!rollbackOnly && session.getTransaction().getRollbackOnly()) {
+                    ctx.clearRollbackOnly();
+                }
+            }
+            ctx.rollbackToActionMarks(afterCommitActionsMark, rollbackActionsMark);
+            throw new TransactionException(ctx.getPrimitiveID(), throwable);
+        }
+    }
+
+    /**
+     * Runs a transaction in a new session and Irminsul context.
+     *
+     * @param options     the transaction options
+     * @param transaction the transaction to run
+     * @param <R>         the result type
+     *
+     * @return the result of the transaction
+     */
+    private <R> R runInNewTransaction(TransactionOptions options, Function<Session, R> transaction) {
+        final var readOnly = options.isReadOnly();
+        final var replica = readOnly && !options.isPrimary() ? selectReplica() : null;
+        final var factory = replica != null ? replica.acquire() : sessionFactory;
+        try (Session session = factory.openSession()) {
             final var ctx = IrminsulContext.initializeCurrent(session);
-            logIfEnabled("[%d] Begin transaction".formatted(ctx.getID()));
+            ctx.setReadOnly(readOnly);
+            final var name = options.getName() != null ? options.getName() : TransactionOptions.DEFAULT_NAME;
+            ctx.setName(name);
+            if (options.getTimeout() != null) {
+                ctx.startTimeout(options.getTimeout());
+            }
+            if (isDebugLogEnabled()) {
+                if (replica != null) {
+                    logIfEnabled("[%d] Begin read-only transaction on replica %s"
+                        .formatted(ctx.getPrimitiveID(), replica.getUrl()));
+                } else {
+                    logIfEnabled(
+                        "[%d] Begin %stransaction".formatted(ctx.getPrimitiveID(), readOnly ? "read-only " : ""));
+                }
+            }
+            final var metrics = transactionMetrics;
             try {
                 beforeBeginTransaction(ctx);
+                long phaseStart = System.nanoTime();
                 ctx.beginTransaction();
+                metrics.recordPhase(name, TransactionPhase.BEGIN, System.nanoTime() - phaseStart);
                 afterBeginTransaction(ctx);
+                phaseStart = System.nanoTime();
                 R result = transaction.apply(session);
-                logIfEnabled("[%d] Committing transaction".formatted(ctx.getID()));
+                metrics.recordPhase(name, TransactionPhase.BODY, System.nanoTime() - phaseStart);
+                ctx.checkTimeout();
+                logIfEnabled("[{}] Committing transaction", ctx.getPrimitiveID());
                 beforeCommitTransaction(ctx);
+                phaseStart = System.nanoTime();
                 ctx.commit();
-                logIfEnabled("[%d] Running after commit actions".formatted(ctx.getID()));
+                metrics.recordPhase(name, TransactionPhase.COMMIT, System.nanoTime() - phaseStart);
+                logIfEnabled("[{}] Running after commit actions", ctx.getPrimitiveID());
                 afterCommitTransaction(ctx);
+                phaseStart = System.nanoTime();
                 ctx.runAfterCommitActions();
+                metrics.recordPhase(name, TransactionPhase.AFTER_COMMIT_ACTIONS, System.nanoTime() - phaseStart);
                 return result;
             } catch (Throwable throwable) {
-                logIfEnabled("[%d] Exception occurred while running transaction, rolling back".formatted(ctx.getID()),
+                logIfEnabled("[{}] Exception occurred while running transaction, rolling back", ctx.getPrimitiveID(),
                     throwable);
                 beforeRollbackTransaction(ctx);
+                final long phaseStart = System.nanoTime();
                 ctx.rollback();
-                logIfEnabled("[%d] Running after rollback actions".formatted(ctx.getID()));
+                metrics.recordPhase(name, TransactionPhase.ROLLBACK, System.nanoTime() - phaseStart);
+                logIfEnabled("[{}] Running after rollback actions", ctx.getPrimitiveID());
                 afterRollbackTransaction(ctx);
                 ctx.runAfterRollbackActions();
-                throw new TransactionException(ctx.getID(), throwable);
+                if (throwable instanceof TransactionTimeoutException timeoutException) {
+                    throw timeoutException;
+                }
+                if (ctx.isTimeoutExceeded()) {
+                    throw new TransactionTimeoutException(ctx.getPrimitiveID(), ctx.getTimeout(), throwable);
+                }
+                throw new TransactionException(ctx.getPrimitiveID(), throwable);
             } finally {
                 try {
                     afterTransactionProcessing(ctx);
@@ -219,7 +809,7 @@ public class IrminsulDatabaseService {
                     log.error(
                         "[{}] Exception occurred while processing after transaction actions. This exception will not "
                             + "be rethrown.",
-                        ctx.getID(), throwable);
+                        ctx.getPrimitiveID(), throwable);
                 } finally {
                     ctx.clear();
                 }
@@ -227,19 +817,60 @@ public class IrminsulDatabaseService {
         } catch (HibernateException exception) {
             logIfEnabled("An error occurred while opening session", exception);
             throw exception;
+        } finally {
+            if (replica != null) {
+                replica.release();
+            }
         }
     }
 
     /**
-     * Runs a transaction in the current thread context without returning a result.
+     * Selects a read replica for a new read-only transaction using the configured
+     * {@link ReplicaSelectionStrategy}.
      *
-     * @param transaction the transaction to run
+     * @return the selected replica, or null if no replicas are configured
      */
-    public void runInThreadTransaction(Consumer<Session> transaction) {
-        runInThreadTransaction(session -> {
-            transaction.accept(session);
+    protected ReplicaSessionFactory selectReplica() {
+        final var replicas = replicaSessionFactories;
+        if (replicas.isEmpty()) {
             return null;
-        });
+        }
+
+        // Rotating start index, so ties in least active selection are spread as well
+        final int start = Math.floorMod(replicaIndex.getAndIncrement(), replicas.size());
+        if (databaseConfiguration.getReplicaSelectionStrategy() != ReplicaSelectionStrategy.LEAST_ACTIVE) {
+            return replicas.get(start);
+        }
+
+        ReplicaSessionFactory selected = null;
+        for (int i = 0; i < replicas.size(); i++) {
+            final var replica = replicas.get((start + i) % replicas.size());
+            if (selected == null || replica.getActiveTransactionCount() < selected.getActiveTransactionCount()) {
+                selected = replica;
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Checks if the failed transaction should be retried. By default, uses
+     * {@link TransactionRetryPolicy#isRetryable(Throwable)} of the configured retry policy.
+     *
+     * @param throwable the throwable the transaction failed with
+     *
+     * @return true if the transaction should be retried, false otherwise
+     */
+    protected boolean isRetryable(Throwable throwable) {
+        return databaseConfiguration.getRetryPolicy().isRetryable(throwable);
+    }
+
+    /**
+     * Returns the number of transaction retries since the service was created.
+     *
+     * @return the number of transaction retries
+     */
+    public long getTransactionRetryCount() {
+        return transactionRetryCount.sum();
     }
 
     /**
@@ -305,6 +936,16 @@ public class IrminsulDatabaseService {
     protected void afterTransactionProcessing(IrminsulContext ctx) {
     }
 
+    /**
+     * Invoked before the failed transaction is retried. Its rollback actions have already been run. This method can
+     * be overridden to perform custom actions, such as recording metrics.
+     *
+     * @param exception the exception the transaction failed with
+     * @param attempt   the number of the failed attempt, starting at 1
+     */
+    protected void onTransactionRetry(TransactionException exception, int attempt) {
+    }
+
     /**
      * Populates the Hibernate configuration with the database configuration.
      *
@@ -374,6 +1015,54 @@ public class IrminsulDatabaseService {
         properties.put(Environment.HBM2DDL_AUTO, databaseConfiguration.getHbm2ddlAuto().name().toLowerCase());
         properties.put(Environment.SHOW_SQL, databaseConfiguration.isDebugSql());
         properties.put(Environment.FORMAT_SQL, databaseConfiguration.isDebugSql());
+
+        // Batching, Hibernate's defaults are kept unless it is enabled
+        if (databaseConfiguration.getJdbcBatchSize() > 0) {
+            properties.put(Environment.STATEMENT_BATCH_SIZE, String.valueOf(databaseConfiguration.getJdbcBatchSize()));
+            properties.put(Environment.ORDER_INSERTS, String.valueOf(databaseConfiguration.isOrderInserts()));
+            properties.put(Environment.ORDER_UPDATES, String.valueOf(databaseConfiguration.isOrderUpdates()));
+        }
+
+        // Query plans
+        properties.put(Environment.CRITERIA_PLAN_CACHE_ENABLED,
+            String.valueOf(databaseConfiguration.isCriteriaPlanCacheEnabled()));
+
+        // Second-level cache
+        if (databaseConfiguration.isSecondLevelCacheEnabled()) {
+            properties.put(Environment.USE_SECOND_LEVEL_CACHE, "true");
+            properties.put(Environment.USE_QUERY_CACHE, String.valueOf(databaseConfiguration.isQueryCacheEnabled()));
+            properties.put(Environment.CACHE_REGION_FACTORY, createCacheRegionFactory());
+            if (databaseConfiguration.getCacheProvider() != null) {
+                properties.put("hibernate.javax.cache.provider", databaseConfiguration.getCacheProvider());
+            }
+        }
+    }
+
+    /**
+     * Creates the region factory of the second-level cache. Invoked for each session factory, since region factories
+     * cannot be shared. By default, creates {@link IrminsulJCacheRegionFactory} with the configured regions.
+     *
+     * @return the region factory instance
+     */
+    protected RegionFactory createCacheRegionFactory() {
+        return new IrminsulJCacheRegionFactory(databaseConfiguration.getDefaultCacheRegion(),
+            databaseConfiguration.getCacheRegions());
+    }
+
+    /**
+     * Populates the Hibernate properties of a read replica. Invoked after
+     * {@link #populateHibernateProperties(Properties)} and overrides the JDBC URL, disables the HBM2DDL auto action,
+     * marks the pool's connections as read-only and prefixes the second-level cache regions.
+     *
+     * @param properties the properties to populate
+     * @param replicaUrl the JDBC URL of the read replica
+     */
+    protected void populateReplicaHibernateProperties(Properties properties, String replicaUrl) {
+        properties.put(JdbcSettings.JAKARTA_JDBC_URL, replicaUrl);
+        properties.put(Environment.HBM2DDL_AUTO, Action.NONE.name().toLowerCase());
+        properties.put("hibernate.hikari.readOnly", "true");
+        // Cache regions of the primary and the replicas are kept apart
+        properties.put(Environment.CACHE_REGION_PREFIX, "replica:" + replicaUrl);
     }
 
     /**
@@ -401,6 +1090,58 @@ public class IrminsulDatabaseService {
         return configuration.buildSessionFactory(serviceRegistry.build());
     }
 
+    /**
+     * Creates the executor used for asynchronous transactions. By default, creates a thread pool with at most
+     * {@link DatabaseServiceConfiguration#getMaxConnections()} daemon threads and bounded queue. If
+     * {@link DatabaseServiceConfiguration#isUseVirtualThreads()} is enabled and the Java runtime supports it, each
+     * transaction runs on its own virtual thread, while the number of concurrently running transactions is capped with
+     * a semaphore sized to the connection pool.
+     *
+     * @return the created executor
+     */
+    protected ExecutorService createAsyncExecutor() {
+        final var maxConnections = databaseConfiguration.getMaxConnections();
+        if (databaseConfiguration.isUseVirtualThreads()) {
+            if (BoundedVirtualThreadExecutor.isSupported()) {
+                return BoundedVirtualThreadExecutor.create("irminsul-async-", maxConnections,
+                    databaseConfiguration.getAsyncQueueSize());
+            }
+            log.warn("Virtual threads are not supported by the current Java runtime (Java 21 or higher is required), "
+                + "using platform threads for asynchronous transactions");
+        }
+
+        final var threadCounter = new AtomicInteger();
+        final var executor = new ThreadPoolExecutor(
+            maxConnections,
+            maxConnections,
+            60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(databaseConfiguration.getAsyncQueueSize()),
+            runnable -> {
+                final var thread = new Thread(runnable, "irminsul-async-" + threadCounter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        );
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Shuts down the executor used for asynchronous transactions. Waits for already submitted transactions to finish.
+     */
+    protected void shutdownAsyncExecutor() {
+        asyncExecutor.shutdown();
+        try {
+            if (!asyncExecutor.awaitTermination(30, TimeUnit.SECONDS)) {
+                log.warn("Irminsul's async executor did not terminate in time, interrupting running transactions");
+                asyncExecutor.shutdownNow();
+            }
+        } catch (InterruptedException exception) {
+            asyncExecutor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
     /**
      * Logs a message if SQL debugging is enabled.
      *
@@ -412,6 +1153,27 @@ public class IrminsulDatabaseService {
         }
     }
 
+    /**
+     * Logs a message about a transaction if SQL debugging is enabled. The message is formatted only if it is logged.
+     *
+     * @param format        the message format, with a single {@code {}} placeholder for the transaction ID
+     * @param transactionId the ID of the transaction
+     */
+    protected void logIfEnabled(String format, long transactionId) {
+        if (databaseConfiguration.isDebugSql()) {
+            log.info(format, transactionId);
+        }
+    }
+
+    /**
+     * Checks if SQL debugging is enabled, so the debug logs should be logged.
+     *
+     * @return true if debug logs are enabled, false otherwise
+     */
+    protected boolean isDebugLogEnabled() {
+        return databaseConfiguration.isDebugSql();
+    }
+
     /**
      * Logs an error message if error logging is enabled.
      *
@@ -423,4 +1185,18 @@ public class IrminsulDatabaseService {
             log.error(message, throwable);
         }
     }
+
+    /**
+     * Logs an error message about a transaction if error logging is enabled. The message is formatted only if it is
+     * logged.
+     *
+     * @param format        the message format, with a single {@code {}} placeholder for the transaction ID
+     * @param transactionId the ID of the transaction
+     * @param throwable     the throwable to log
+     */
+    protected void logIfEnabled(String format, long transactionId, Throwable throwable) {
+        if (databaseConfiguration.isLogErrors()) {
+            log.error(format, transactionId, throwable);
+        }
+    }
 }
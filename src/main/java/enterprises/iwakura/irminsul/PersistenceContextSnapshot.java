@@ -0,0 +1,120 @@
+package enterprises.iwakura.irminsul;
+
+import org.hibernate.Session;
+import org.hibernate.engine.spi.EntityEntry;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.engine.spi.Status;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Entities managed by a session when a nested transaction starts, used to restore the persistence context once the
+ * nested transaction is rolled back to its savepoint. Only the entities touched by the nested transaction are
+ * restored, so the outer transaction keeps working with the entities it loaded:
+ * <ul>
+ *     <li>entities which became managed within the nested transaction are evicted</li>
+ *     <li>entities changed within the nested transaction are refreshed from the database</li>
+ *     <li>entities removed within the nested transaction are evicted, as their removal cannot be undone</li>
+ * </ul>
+ */
+final class PersistenceContextSnapshot {
+
+    // Loaded states by the entity, flushing an update replaces the loaded state array of the entity
+    private final Map<Object, Object[]> loadedStates = new IdentityHashMap<>();
+
+    private PersistenceContextSnapshot() {
+    }
+
+    /**
+     * Takes a snapshot of the entities managed by the session. The session must be flushed beforehand.
+     *
+     * @param session the session
+     *
+     * @return the snapshot
+     */
+    static PersistenceContextSnapshot take(Session session) {
+        final var snapshot = new PersistenceContextSnapshot();
+        final var persistenceContext = session.unwrap(SessionImplementor.class).getPersistenceContextInternal();
+        for (Map.Entry<Object, EntityEntry> entry : persistenceContext.reentrantSafeEntityEntries()) {
+            snapshot.loadedStates.put(entry.getKey(), entry.getValue().getLoadedState());
+        }
+        return snapshot;
+    }
+
+    /**
+     * Restores the persistence context to the snapshot. Must be called after the rollback to the savepoint, so the
+     * refreshed entities are read as they were before the nested transaction.
+     *
+     * @param session the session
+     */
+    void restore(Session session) {
+        final var source = session.unwrap(SessionImplementor.class);
+        // Actions of a failed flush stay queued, they must not be executed again by the outer transaction
+        source.getJdbcCoordinator().abortBatch();
+        source.getActionQueue().clear();
+
+        final var persistenceContext = source.getPersistenceContextInternal();
+        final List<Object> evicted = new ArrayList<>();
+        final Set<Object> refreshed = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Map.Entry<Object, EntityEntry> entry : persistenceContext.reentrantSafeEntityEntries()) {
+            final var entity = entry.getKey();
+            final var entityEntry = entry.getValue();
+            if (!loadedStates.containsKey(entity)) {
+                evicted.add(entity);
+            } else if (entityEntry.getStatus() == Status.DELETED || entityEntry.getStatus() == Status.GONE) {
+                evicted.add(entity);
+            } else if (isChanged(source, entity, entityEntry)) {
+                refreshed.add(entity);
+            }
+        }
+        // Changes of collections are not part of the entity's state
+        for (var collection : persistenceContext.getCollectionEntries().keySet()) {
+            final var owner = collection.getOwner();
+            if (owner != null && collection.isDirty() && loadedStates.containsKey(owner)) {
+                refreshed.add(owner);
+            }
+        }
+
+        for (Object entity : evicted) {
+            if (persistenceContext.getEntry(entity) != null) {
+                session.evict(entity);
+            }
+        }
+        for (Object entity : refreshed) {
+            // The entity might have been evicted by a cascade
+            if (session.contains(entity)) {
+                session.refresh(entity);
+            }
+        }
+    }
+
+    /**
+     * Checks if the entity was changed since the snapshot, either by a flushed update or in memory only.
+     *
+     * @param source      the session
+     * @param entity      the entity
+     * @param entityEntry the entry of the entity
+     *
+     * @return true if the entity was changed, false otherwise
+     */
+    private boolean isChanged(SessionImplementor source, Object entity, EntityEntry entityEntry) {
+        if (entityEntry.getStatus() != Status.MANAGED) {
+            return false;
+        }
+        final var loadedState = entityEntry.getLoadedState();
+        if (loadedState != loadedStates.get(entity)) {
+            return true;
+        }
+        if (loadedState == null) {
+            // Read-only entities are never written
+            return false;
+        }
+        final var persister = entityEntry.getPersister();
+        return persister.findDirty(persister.getValues(entity), loadedState, entity, source) != null;
+    }
+}
@@ -0,0 +1,88 @@
+package enterprises.iwakura.irminsul;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.DeleteContext;
+import org.hibernate.event.spi.DeleteEvent;
+import org.hibernate.event.spi.DeleteEventListener;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.MergeContext;
+import org.hibernate.event.spi.MergeEvent;
+import org.hibernate.event.spi.MergeEventListener;
+import org.hibernate.event.spi.PersistContext;
+import org.hibernate.event.spi.PersistEvent;
+import org.hibernate.event.spi.PersistEventListener;
+
+/**
+ * Rejects persisting, merging and removing entities directly through the session of a read-only transaction. Read-only
+ * transactions never flush, so such writes would otherwise be dropped silently, while a persisted entity may even get
+ * a generated ID. Bulk and native mutation queries are rejected by the database, as the JDBC connection is read-only.
+ */
+final class ReadOnlyWriteListener implements PersistEventListener, MergeEventListener, DeleteEventListener {
+
+    private static final ReadOnlyWriteListener INSTANCE = new ReadOnlyWriteListener();
+
+    private ReadOnlyWriteListener() {
+    }
+
+    /**
+     * Registers the listener before Hibernate's own listeners of the session factory.
+     *
+     * @param sessionFactory the session factory
+     */
+    static void register(SessionFactory sessionFactory) {
+        final var registry = sessionFactory.unwrap(SessionFactoryImplementor.class).getServiceRegistry()
+                .getService(EventListenerRegistry.class);
+        registry.prependListeners(EventType.PERSIST, INSTANCE);
+        registry.prependListeners(EventType.MERGE, INSTANCE);
+        registry.prependListeners(EventType.DELETE, INSTANCE);
+    }
+
+    @Override
+    public void onPersist(PersistEvent event) {
+        checkWritable(event.getSession(), "persist");
+    }
+
+    @Override
+    public void onPersist(PersistEvent event, PersistContext createdAlready) {
+        checkWritable(event.getSession(), "persist");
+    }
+
+    @Override
+    public void onMerge(MergeEvent event) {
+        checkWritable(event.getSession(), "merge");
+    }
+
+    @Override
+    public void onMerge(MergeEvent event, MergeContext copiedAlready) {
+        checkWritable(event.getSession(), "merge");
+    }
+
+    @Override
+    public void onDelete(DeleteEvent event) {
+        checkWritable(event.getSession(), "remove");
+    }
+
+    @Override
+    public void onDelete(DeleteEvent event, DeleteContext transientEntities) {
+        checkWritable(event.getSession(), "remove");
+    }
+
+    /**
+     * Checks that the session does not belong to the current read-only Irminsul context.
+     *
+     * @param session   the session of the event
+     * @param operation the name of the operation, for the exception message
+     *
+     * @throws IllegalStateException if the session belongs to the current read-only Irminsul context
+     */
+    private static void checkWritable(EventSource session, String operation) {
+        final var ctx = IrminsulContext.getCurrentOrNull();
+        if (ctx != null && ctx.isReadOnly() && ctx.getSession() == session) {
+            throw new IllegalStateException("[%d] Cannot %s an entity within read-only Irminsul context"
+                .formatted(ctx.getPrimitiveID(), operation));
+        }
+    }
+}
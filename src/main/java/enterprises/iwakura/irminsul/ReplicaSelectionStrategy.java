@@ -0,0 +1,17 @@
+package enterprises.iwakura.irminsul;
+
+/**
+ * Strategy for selecting a read replica for read-only transactions
+ */
+public enum ReplicaSelectionStrategy {
+
+    /**
+     * Replicas are selected one after another
+     */
+    ROUND_ROBIN,
+
+    /**
+     * Replica with the least active read-only transactions is selected
+     */
+    LEAST_ACTIVE
+}
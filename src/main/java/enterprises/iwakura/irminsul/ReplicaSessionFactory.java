@@ -0,0 +1,65 @@
+package enterprises.iwakura.irminsul;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hibernate.SessionFactory;
+
+import lombok.Getter;
+
+/**
+ * Holds the Hibernate session factory (and its connection pool) of a read replica within
+ * {@link IrminsulDatabaseService}.
+ */
+public final class ReplicaSessionFactory {
+
+    /**
+     * JDBC URL of the replica
+     */
+    @Getter
+    private final String url;
+
+    /**
+     * The Hibernate session factory connected to the replica
+     */
+    @Getter
+    private final SessionFactory sessionFactory;
+
+    private final AtomicInteger activeTransactions = new AtomicInteger();
+
+    /**
+     * Creates a new ReplicaSessionFactory
+     *
+     * @param url            the JDBC URL of the replica
+     * @param sessionFactory the session factory connected to the replica
+     */
+    public ReplicaSessionFactory(String url, SessionFactory sessionFactory) {
+        this.url = url;
+        this.sessionFactory = sessionFactory;
+    }
+
+    /**
+     * Marks the start of a transaction on this replica.
+     *
+     * @return the session factory of this replica
+     */
+    SessionFactory acquire() {
+        activeTransactions.incrementAndGet();
+        return sessionFactory;
+    }
+
+    /**
+     * Marks the end of a transaction on this replica.
+     */
+    void release() {
+        activeTransactions.decrementAndGet();
+    }
+
+    /**
+     * Returns the number of currently running transactions on this replica.
+     *
+     * @return the number of active transactions
+     */
+    public int getActiveTransactionCount() {
+        return activeTransactions.get();
+    }
+}
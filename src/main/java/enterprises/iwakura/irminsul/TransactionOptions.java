@@ -0,0 +1,75 @@
+package enterprises.iwakura.irminsul;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.Duration;
+
+/**
+ * Options of a transaction run by {@link IrminsulDatabaseService}. Instances are immutable, so they may be created
+ * once and shared.
+ */
+@Value
+@Builder(toBuilder = true)
+public class TransactionOptions {
+
+    /**
+     * Name of transactions without explicitly specified name
+     */
+    public static final String DEFAULT_NAME = "default";
+
+    /**
+     * Default options: read-write transaction joining the existing one
+     */
+    public static final TransactionOptions DEFAULT = TransactionOptions.builder().build();
+
+    /**
+     * Read-only transaction joining the existing one
+     */
+    public static final TransactionOptions READ_ONLY = TransactionOptions.builder().readOnly(true).build();
+
+    /**
+     * Read-write transaction suspending the existing one
+     */
+    public static final TransactionOptions REQUIRES_NEW = TransactionOptions.builder()
+        .propagation(TransactionPropagation.REQUIRES_NEW)
+        .build();
+
+    /**
+     * Read-write transaction nested in the existing one using a savepoint
+     */
+    public static final TransactionOptions NESTED = TransactionOptions.builder()
+        .propagation(TransactionPropagation.NESTED)
+        .build();
+
+    /**
+     * How the transaction behaves within an existing Irminsul context
+     */
+    @Builder.Default TransactionPropagation propagation = TransactionPropagation.REQUIRED;
+
+    /**
+     * If the transaction is read-only, see {@link IrminsulDatabaseService#runInReadOnlyTransaction(java.util.function.Function)}
+     */
+    @Builder.Default boolean readOnly = false;
+
+    /**
+     * If the read-only transaction runs on the primary database even if read replicas are configured, for reads which
+     * must see the latest committed changes. Applies only when a new transaction is created
+     */
+    @Builder.Default boolean primary = false;
+
+    /**
+     * Timeout of the transaction, or null for no timeout. The remaining time is applied as the query timeout of the
+     * queries issued by repositories within the transaction, and as the statement timeout of loads by ID, multi-loads
+     * and flushes. When the timeout is exceeded, the transaction is rolled back with
+     * {@link enterprises.iwakura.irminsul.exception.TransactionTimeoutException}. Applies only when a new transaction
+     * is created; joined transactions share the timeout of the existing one
+     */
+    @Builder.Default Duration timeout = null;
+
+    /**
+     * Name of the transaction, used as the key of {@link enterprises.iwakura.irminsul.metrics.TransactionMetrics}.
+     * Applies only when a new transaction is created
+     */
+    @Builder.Default String name = DEFAULT_NAME;
+}
@@ -0,0 +1,24 @@
+package enterprises.iwakura.irminsul;
+
+/**
+ * Defines how a transaction behaves when invoked within an existing Irminsul context
+ */
+public enum TransactionPropagation {
+
+    /**
+     * Joins the existing transaction, or creates a new one if none exists
+     */
+    REQUIRED,
+
+    /**
+     * Suspends the existing transaction and runs in a new, separate session and connection. The new transaction is
+     * committed or rolled back independently of the suspended one
+     */
+    REQUIRES_NEW,
+
+    /**
+     * Runs within the existing transaction using a JDBC savepoint, so a failure rolls back only the changes made
+     * since the savepoint. Creates a new transaction if none exists
+     */
+    NESTED
+}
@@ -0,0 +1,110 @@
+package enterprises.iwakura.irminsul;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.JDBCException;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Retry policy for transactions failing on transient errors, such as serialization failures or deadlocks. Only the
+ * outermost transactions are retried, since the nested ones are part of the outer transaction.
+ * <p>
+ * Retried transaction runs its body again from the beginning. Entities persisted by a failed attempt keep their
+ * generated IDs even though the attempt was rolled back, so persisting them again fails and saving them merges
+ * entities whose rows do not exist. The body should therefore create fresh entities on each attempt, instead of
+ * capturing entities created outside of it.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class TransactionRetryPolicy {
+
+    /**
+     * SQLState of serialization failure
+     */
+    public static final String SERIALIZATION_FAILURE = "40001";
+
+    /**
+     * SQLState of detected deadlock (PostgreSQL)
+     */
+    public static final String DEADLOCK_DETECTED = "40P01";
+
+    /**
+     * Maximum number of attempts, including the first one. Value of 1 disables retrying
+     */
+    protected @Builder.Default int maxAttempts = 1;
+
+    /**
+     * Backoff before the first retry
+     */
+    protected @Builder.Default Duration initialBackoff = Duration.ofMillis(50);
+
+    /**
+     * Maximum backoff between retries
+     */
+    protected @Builder.Default Duration maxBackoff = Duration.ofSeconds(2);
+
+    /**
+     * Multiplier of the backoff after each retry
+     */
+    protected @Builder.Default double backoffMultiplier = 2.0;
+
+    /**
+     * Fraction of the backoff which is randomized, between 0 and 1
+     */
+    protected @Builder.Default double jitter = 0.5;
+
+    /**
+     * SQLStates of errors which should be retried
+     */
+    protected @Builder.Default Set<String> retryableSqlStates = Set.of(SERIALIZATION_FAILURE, DEADLOCK_DETECTED);
+
+    /**
+     * Checks if the throwable or any of its causes is an SQL error with retryable SQLState.
+     *
+     * @param throwable the throwable to check
+     *
+     * @return true if the transaction should be retried, false otherwise
+     */
+    public boolean isRetryable(Throwable throwable) {
+        Throwable current = throwable;
+        while (current != null) {
+            String sqlState = null;
+            if (current instanceof SQLException sqlException) {
+                sqlState = sqlException.getSQLState();
+            } else if (current instanceof JDBCException jdbcException) {
+                sqlState = jdbcException.getSQLState();
+            }
+            if (sqlState != null && retryableSqlStates.contains(sqlState)) {
+                return true;
+            }
+            if (current.getCause() == current) {
+                break;
+            }
+            current = current.getCause();
+        }
+        return false;
+    }
+
+    /**
+     * Computes the backoff before the next attempt. The backoff grows exponentially and is randomized by
+     * {@link #jitter}.
+     *
+     * @param attempt the number of the failed attempt, starting at 1
+     *
+     * @return the backoff in milliseconds
+     */
+    public long computeBackoffMillis(int attempt) {
+        final double exponential = initialBackoff.toMillis() * Math.pow(backoffMultiplier, attempt - 1);
+        final double backoff = Math.min(exponential, maxBackoff.toMillis());
+        final double randomized = backoff * (1 - jitter * ThreadLocalRandom.current().nextDouble());
+        return Math.max(0, Math.round(randomized));
+    }
+}
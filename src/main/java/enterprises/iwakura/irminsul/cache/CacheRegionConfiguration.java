@@ -0,0 +1,30 @@
+package enterprises.iwakura.irminsul.cache;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Duration;
+
+/**
+ * Configuration of a second-level cache region, see
+ * {@link enterprises.iwakura.irminsul.DatabaseServiceConfiguration#getCacheRegions()}
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class CacheRegionConfiguration {
+
+    /**
+     * Maximum number of entries in the region. Applied only if the JCache provider supports it (Caffeine JCache),
+     * other providers have to bound the region in their own configuration
+     */
+    protected @Builder.Default long maxEntries = 10_000;
+
+    /**
+     * Time to live of the entries since they were created, or null if the entries do not expire
+     */
+    protected @Builder.Default Duration timeToLive = null;
+}
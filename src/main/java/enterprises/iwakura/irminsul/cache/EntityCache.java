@@ -0,0 +1,246 @@
+package enterprises.iwakura.irminsul.cache;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded in-process cache of entities by their ID, used by
+ * {@link enterprises.iwakura.irminsul.repository.BaseRepository#findById(Object)}. Least recently used entries are
+ * evicted once the cache is full, and entries optionally expire after their time to live.<br>
+ * The cache is split into segments by the hash of the ID, each with its own lock, so lookups of different IDs
+ * rarely contend. The least recently used order is kept per segment, so eviction is approximate for large caches.<br>
+ * Loading an entry is guarded by an invalidation stamp: take {@link #getStamp(Object)} before reading the entity from
+ * the database and pass it to {@link #put(Object, Object, long)}. If an entry of the same segment was invalidated in
+ * between, the loaded entity might be stale, so it is not cached.<br>
+ * Cached entities are detached and shared between threads, so they must not be modified. The repository caches its
+ * own copies and hands each caller a new copy, and it evicts an entity as soon as it is written.
+ *
+ * @param <TId>     the ID type
+ * @param <TEntity> the entity type
+ */
+public class EntityCache<TId, TEntity> {
+
+    // Segments hold at least this many entries, so small caches keep an exact order
+    private static final int MIN_SEGMENT_SIZE = 32;
+    private static final int MAX_SEGMENTS = 16;
+
+    private final long timeToLiveNanos;
+    private final Segment<TId, TEntity>[] segments;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    /**
+     * Creates a new cache.
+     *
+     * @param maxSize    the maximum number of cached entities
+     * @param timeToLive the time to live of the cached entities since they were put, or null if they do not expire
+     */
+    @SuppressWarnings("unchecked")
+    public EntityCache(int maxSize, Duration timeToLive) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Max size must be at least 1");
+        }
+        this.timeToLiveNanos = timeToLive != null ? timeToLive.toNanos() : 0;
+
+        final int segmentCount = Math.max(1, Math.min(MAX_SEGMENTS, Integer.highestOneBit(maxSize / MIN_SEGMENT_SIZE)));
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            // Sizes of the segments add up to the max size
+            segments[i] = new Segment<>(maxSize / segmentCount + (i < maxSize % segmentCount ? 1 : 0));
+        }
+    }
+
+    /**
+     * Gets the cached entity.
+     *
+     * @param id the ID of the entity
+     *
+     * @return the cached entity, or null if it is not cached or has expired
+     */
+    public TEntity get(TId id) {
+        final var segment = segmentFor(id);
+        segment.lock.lock();
+        try {
+            final var entry = segment.entries.get(id);
+            if (entry != null) {
+                if (entry.expiresAtNanos == 0 || entry.expiresAtNanos - System.nanoTime() > 0) {
+                    hitCount.increment();
+                    return entry.entity;
+                }
+                segment.entries.remove(id);
+                evictionCount.increment();
+            }
+        } finally {
+            segment.lock.unlock();
+        }
+        missCount.increment();
+        return null;
+    }
+
+    /**
+     * Gets the current invalidation stamp of the ID's segment. Take it before reading an entity to be cached from the
+     * database.
+     *
+     * @param id the ID of the entity
+     *
+     * @return the invalidation stamp
+     */
+    public long getStamp(TId id) {
+        return segmentFor(id).stamp;
+    }
+
+    /**
+     * Caches the entity, unless an entry of the ID's segment was invalidated since the stamp was taken.
+     *
+     * @param id     the ID of the entity
+     * @param entity the entity, read from the database after the stamp was taken
+     * @param stamp  the stamp from {@link #getStamp(Object)}
+     *
+     * @return true if the entity was cached, false otherwise
+     */
+    public boolean put(TId id, TEntity entity, long stamp) {
+        final var segment = segmentFor(id);
+        segment.lock.lock();
+        try {
+            // Invalidations also take the lock, so no invalidation can happen between the check and the put
+            if (segment.stamp != stamp) {
+                return false;
+            }
+            final long expiresAtNanos = timeToLiveNanos > 0 ? Math.max(1, System.nanoTime() + timeToLiveNanos) : 0;
+            segment.entries.put(id, new Entry<>(entity, expiresAtNanos));
+            if (segment.entries.size() > segment.maxSize) {
+                final var eldest = segment.entries.keySet().iterator();
+                eldest.next();
+                eldest.remove();
+                evictionCount.increment();
+            }
+            return true;
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    /**
+     * Invalidates the cached entity. Loads of the ID's segment started before the invalidation are not cached.
+     *
+     * @param id the ID of the entity
+     */
+    public void invalidate(TId id) {
+        final var segment = segmentFor(id);
+        segment.lock.lock();
+        try {
+            segment.stamp++;
+            segment.entries.remove(id);
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    /**
+     * Invalidates all cached entities. Loads started before the invalidation are not cached.
+     */
+    public void invalidateAll() {
+        for (Segment<TId, TEntity> segment : segments) {
+            segment.lock.lock();
+            try {
+                segment.stamp++;
+                segment.entries.clear();
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of cached entities, including the expired ones not evicted yet.
+     *
+     * @return the number of cached entities
+     */
+    public int size() {
+        int size = 0;
+        for (Segment<TId, TEntity> segment : segments) {
+            segment.lock.lock();
+            try {
+                size += segment.entries.size();
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns the number of lookups which found a cached entity.
+     *
+     * @return the hit count
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * Returns the number of lookups which did not find a cached entity.
+     *
+     * @return the miss count
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * Returns the number of entities evicted because the cache was full or they expired.
+     *
+     * @return the eviction count
+     */
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * Returns the ratio of hits to all lookups.
+     *
+     * @return the hit rate, or 0 if there were no lookups
+     */
+    public double getHitRate() {
+        final long hits = getHitCount();
+        final long lookups = hits + getMissCount();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    private Segment<TId, TEntity> segmentFor(TId id) {
+        final int hash = id.hashCode();
+        return segments[(hash ^ (hash >>> 16)) & (segments.length - 1)];
+    }
+
+    /**
+     * Part of the cache with its own lock, least recently used order and invalidation stamp. The lock is not a
+     * monitor, so virtual threads waiting for it do not pin their carrier thread.
+     */
+    private static final class Segment<TId, TEntity> {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final LinkedHashMap<TId, Entry<TEntity>> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private final int maxSize;
+        // Written under the lock, read without it by getStamp
+        private volatile long stamp;
+
+        private Segment(int maxSize) {
+            this.maxSize = maxSize;
+        }
+    }
+
+    private static final class Entry<TEntity> {
+
+        private final TEntity entity;
+        private final long expiresAtNanos;
+
+        private Entry(TEntity entity, long expiresAtNanos) {
+            this.entity = entity;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+    }
+}
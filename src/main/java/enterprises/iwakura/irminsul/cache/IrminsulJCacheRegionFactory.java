@@ -0,0 +1,122 @@
+package enterprises.iwakura.irminsul.cache;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.TimeUnit;
+
+import javax.cache.Cache;
+import javax.cache.configuration.Configuration;
+import javax.cache.configuration.MutableConfiguration;
+import javax.cache.expiry.CreatedExpiryPolicy;
+import javax.cache.expiry.Duration;
+
+import org.hibernate.cache.jcache.internal.JCacheRegionFactory;
+
+/**
+ * JCache region factory creating the missing second-level cache regions with the sizes and time to live of
+ * {@link CacheRegionConfiguration}. Regions are looked up by their name (the entity class name by default, or the
+ * region of {@link org.hibernate.annotations.Cache#region()}), optionally prefixed with the region prefix. With the
+ * Caffeine JCache provider, the regions are bounded by {@link CacheRegionConfiguration#getMaxEntries()}; other
+ * providers only apply the time to live.
+ */
+@Slf4j
+public class IrminsulJCacheRegionFactory extends JCacheRegionFactory {
+
+    private static final String CAFFEINE_CONFIGURATION_CLASS =
+        "com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration";
+
+    private final CacheRegionConfiguration defaultRegion;
+    private final Map<String, CacheRegionConfiguration> regions;
+
+    /**
+     * Creates a new region factory.
+     *
+     * @param defaultRegion the configuration of regions not found in the regions map
+     * @param regions       the configurations of regions, keyed by region name
+     */
+    public IrminsulJCacheRegionFactory(CacheRegionConfiguration defaultRegion,
+        Map<String, CacheRegionConfiguration> regions) {
+        this.defaultRegion = defaultRegion;
+        this.regions = Map.copyOf(regions);
+    }
+
+    @Override
+    protected Cache<Object, Object> createCache(String regionName) {
+        final var region = findRegion(regionName);
+        log.debug("Creating second-level cache region {} with max entries {} and time to live {}", regionName,
+            region.getMaxEntries(), region.getTimeToLive());
+        return getCacheManager().createCache(regionName, createConfiguration(region));
+    }
+
+    /**
+     * Finds the configuration of the region.
+     *
+     * @param regionName the region name, possibly qualified by the region prefix
+     *
+     * @return the configuration of the region, or the default one
+     */
+    protected CacheRegionConfiguration findRegion(String regionName) {
+        final var region = regions.get(regionName);
+        if (region != null) {
+            return region;
+        }
+        for (Map.Entry<String, CacheRegionConfiguration> entry : regions.entrySet()) {
+            if (regionName.endsWith("." + entry.getKey())) {
+                return entry.getValue();
+            }
+        }
+        return defaultRegion;
+    }
+
+    /**
+     * Creates the JCache configuration of the region.
+     *
+     * @param region the configuration of the region
+     *
+     * @return the JCache configuration
+     */
+    protected Configuration<Object, Object> createConfiguration(CacheRegionConfiguration region) {
+        final var providerName = getCacheManager().getCachingProvider().getClass().getName();
+        if (providerName.startsWith("com.github.benmanes.caffeine.jcache")) {
+            try {
+                return createCaffeineConfiguration(region);
+            } catch (ReflectiveOperationException exception) {
+                log.warn("Could not create Caffeine configuration of second-level cache region, "
+                    + "max entries will not be applied", exception);
+            }
+        }
+
+        final var configuration = new MutableConfiguration<Object, Object>();
+        if (region.getTimeToLive() != null) {
+            configuration.setExpiryPolicyFactory(CreatedExpiryPolicy.factoryOf(
+                new Duration(TimeUnit.MILLISECONDS, region.getTimeToLive().toMillis())));
+        }
+        return configuration;
+    }
+
+    /**
+     * Creates Caffeine's JCache configuration, which is looked up reflectively, so Caffeine is not required.
+     *
+     * @param region the configuration of the region
+     *
+     * @return the Caffeine JCache configuration
+     *
+     * @throws ReflectiveOperationException if Caffeine's configuration could not be created
+     */
+    @SuppressWarnings("unchecked")
+    private Configuration<Object, Object> createCaffeineConfiguration(CacheRegionConfiguration region)
+        throws ReflectiveOperationException {
+        final var configurationClass = Class.forName(CAFFEINE_CONFIGURATION_CLASS, true,
+            getCacheManager().getClassLoader());
+        final var configuration = configurationClass.getConstructor().newInstance();
+        configurationClass.getMethod("setMaximumSize", OptionalLong.class)
+            .invoke(configuration, OptionalLong.of(region.getMaxEntries()));
+        if (region.getTimeToLive() != null) {
+            configurationClass.getMethod("setExpireAfterWrite", OptionalLong.class)
+                .invoke(configuration, OptionalLong.of(region.getTimeToLive().toNanos()));
+        }
+        return (Configuration<Object, Object>) configuration;
+    }
+}
@@ -0,0 +1,107 @@
+package enterprises.iwakura.irminsul.cache;
+
+import java.time.Duration;
+
+/**
+ * Bounded, time-bounded cache of IDs known not to exist, used by
+ * {@link enterprises.iwakura.irminsul.repository.BaseRepository#findById(Object)} and
+ * {@link enterprises.iwakura.irminsul.repository.BaseRepository#existsById(Object)}. Misses are invalidated once an
+ * entity with the ID is written through the repository; entities inserted by other means are found once the miss
+ * expires. Uses the same invalidation stamp guard as {@link EntityCache}.
+ *
+ * @param <TId> the ID type
+ */
+public class NegativeLookupCache<TId> {
+
+    private final EntityCache<TId, Boolean> misses;
+
+    /**
+     * Creates a new negative lookup cache.
+     *
+     * @param maxSize    the maximum number of cached misses
+     * @param timeToLive the time to live of the cached misses
+     */
+    public NegativeLookupCache(int maxSize, Duration timeToLive) {
+        if (timeToLive == null || timeToLive.isZero() || timeToLive.isNegative()) {
+            throw new IllegalArgumentException("Time to live must be positive");
+        }
+        this.misses = new EntityCache<>(maxSize, timeToLive);
+    }
+
+    /**
+     * Checks if the ID is known not to exist.
+     *
+     * @param id the ID
+     *
+     * @return true if a miss of the ID is cached, false otherwise
+     */
+    public boolean isKnownMissing(TId id) {
+        return misses.get(id) != null;
+    }
+
+    /**
+     * Gets the current invalidation stamp of the ID. Take it before looking up the ID in the database.
+     *
+     * @param id the ID
+     *
+     * @return the invalidation stamp
+     */
+    public long getStamp(TId id) {
+        return misses.getStamp(id);
+    }
+
+    /**
+     * Caches the miss of the ID, unless a miss was invalidated since the stamp was taken.
+     *
+     * @param id    the ID which was not found
+     * @param stamp the stamp from {@link #getStamp(Object)}
+     *
+     * @return true if the miss was cached, false otherwise
+     */
+    public boolean recordMiss(TId id, long stamp) {
+        return misses.put(id, Boolean.TRUE, stamp);
+    }
+
+    /**
+     * Invalidates the cached miss of the ID.
+     *
+     * @param id the ID
+     */
+    public void invalidate(TId id) {
+        misses.invalidate(id);
+    }
+
+    /**
+     * Invalidates all cached misses.
+     */
+    public void invalidateAll() {
+        misses.invalidateAll();
+    }
+
+    /**
+     * Returns the number of cached misses, including the expired ones not evicted yet.
+     *
+     * @return the number of cached misses
+     */
+    public int size() {
+        return misses.size();
+    }
+
+    /**
+     * Returns the number of lookups answered by a cached miss.
+     *
+     * @return the hit count
+     */
+    public long getHitCount() {
+        return misses.getHitCount();
+    }
+
+    /**
+     * Returns the number of lookups which were not answered by a cached miss.
+     *
+     * @return the miss count
+     */
+    public long getMissCount() {
+        return misses.getMissCount();
+    }
+}
@@ -15,4 +15,9 @@ public class TransactionException extends RuntimeException {
         super("Transaction with ID " + id + " failed in exception: " + cause.getMessage(), cause);
         this.id = id;
     }
+
+    protected TransactionException(long id, String message, Throwable cause) {
+        super(message, cause);
+        this.id = id;
+    }
 }
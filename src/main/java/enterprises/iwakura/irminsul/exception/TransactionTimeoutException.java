@@ -0,0 +1,23 @@
+package enterprises.iwakura.irminsul.exception;
+
+import java.time.Duration;
+
+import lombok.Getter;
+
+/**
+ * Exception thrown when a transaction exceeds its timeout. The transaction is rolled back.
+ */
+@Getter
+public class TransactionTimeoutException extends TransactionException {
+
+    private final Duration timeout;
+
+    public TransactionTimeoutException(long id, Duration timeout) {
+        this(id, timeout, null);
+    }
+
+    public TransactionTimeoutException(long id, Duration timeout, Throwable cause) {
+        super(id, "Transaction with ID " + id + " exceeded its timeout of " + timeout.toMillis() + " ms", cause);
+        this.timeout = timeout;
+    }
+}
@@ -0,0 +1,75 @@
+package enterprises.iwakura.irminsul.metrics;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link TransactionMetrics} recording the latencies into {@link LatencyHistogram}s, one per transaction name and
+ * phase.
+ */
+public class HistogramTransactionMetrics implements TransactionMetrics {
+
+    private static final TransactionPhase[] PHASES = TransactionPhase.values();
+
+    private final Map<String, TransactionHistograms> histograms = new ConcurrentHashMap<>();
+
+    @Override
+    public void recordPhase(String transactionName, TransactionPhase phase, long durationNanos) {
+        getHistograms(transactionName).phases[phase.ordinal()].record(durationNanos);
+    }
+
+    @Override
+    public void recordRetry(String transactionName) {
+        getHistograms(transactionName).retries.increment();
+    }
+
+    @Override
+    public Set<String> getTransactionNames() {
+        return Set.copyOf(histograms.keySet());
+    }
+
+    @Override
+    public LatencySnapshot getSnapshot(String transactionName, TransactionPhase phase) {
+        final var transactionHistograms = histograms.get(transactionName);
+        if (transactionHistograms == null) {
+            return LatencySnapshot.EMPTY;
+        }
+        return transactionHistograms.phases[phase.ordinal()].snapshot();
+    }
+
+    @Override
+    public long getRetryCount(String transactionName) {
+        final var transactionHistograms = histograms.get(transactionName);
+        return transactionHistograms == null ? 0 : transactionHistograms.retries.sum();
+    }
+
+    /**
+     * Resets all recorded values.
+     */
+    public void reset() {
+        histograms.clear();
+    }
+
+    private TransactionHistograms getHistograms(String transactionName) {
+        // Avoids the lambda and locking of computeIfAbsent on the hot path
+        final var transactionHistograms = histograms.get(transactionName);
+        if (transactionHistograms != null) {
+            return transactionHistograms;
+        }
+        return histograms.computeIfAbsent(transactionName, name -> new TransactionHistograms());
+    }
+
+    private static final class TransactionHistograms {
+
+        private final LatencyHistogram[] phases = new LatencyHistogram[PHASES.length];
+        private final LongAdder retries = new LongAdder();
+
+        private TransactionHistograms() {
+            for (int i = 0; i < phases.length; i++) {
+                phases[i] = new LatencyHistogram();
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package enterprises.iwakura.irminsul.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of latencies in nanoseconds with log-linear buckets, similar to HdrHistogram. Each power of two
+ * is split into {@value #SUB_BUCKET_COUNT} linear sub-buckets, so the recorded values have relative error of about
+ * 3 %. Recording does not allocate and does not lock.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder totalCount = new LongAdder();
+    private final LongAdder totalSum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a value.
+     *
+     * @param valueNanos the value in nanoseconds, negative values are recorded as zero
+     */
+    public void record(long valueNanos) {
+        final long value = Math.max(0, valueNanos);
+        counts.incrementAndGet(indexOf(value));
+        totalCount.increment();
+        totalSum.add(value);
+        long currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+
+    /**
+     * Creates a snapshot of the recorded values. Values recorded concurrently may or may not be included.
+     *
+     * @return the snapshot
+     */
+    public LatencySnapshot snapshot() {
+        final long[] snapshotCounts = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshotCounts[i] = counts.get(i);
+            count += snapshotCounts[i];
+        }
+        if (count == 0) {
+            return LatencySnapshot.EMPTY;
+        }
+
+        final long maxValue = max.get();
+        return new LatencySnapshot(
+            count,
+            totalSum.sum() / Math.max(1, totalCount.sum()),
+            Math.min(maxValue, valueAtPercentile(snapshotCounts, count, 50.0)),
+            Math.min(maxValue, valueAtPercentile(snapshotCounts, count, 90.0)),
+            Math.min(maxValue, valueAtPercentile(snapshotCounts, count, 99.0)),
+            maxValue
+        );
+    }
+
+    /**
+     * Resets the histogram. Values recorded concurrently may be lost.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        totalCount.reset();
+        totalSum.reset();
+        max.set(0);
+    }
+
+    private static long valueAtPercentile(long[] counts, long totalCount, double percentile) {
+        final long targetCount = Math.max(1, (long) Math.ceil(percentile / 100.0 * totalCount));
+        long cumulativeCount = 0;
+        for (int i = 0; i < counts.length; i++) {
+            cumulativeCount += counts[i];
+            if (cumulativeCount >= targetCount) {
+                return highestValueOf(i);
+            }
+        }
+        return highestValueOf(counts.length - 1);
+    }
+
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        final int shift = (Long.SIZE - 1 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+        final int subBucket = (int) (value >>> shift) - SUB_BUCKET_COUNT;
+        return (shift + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    private static long highestValueOf(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        final int shift = index / SUB_BUCKET_COUNT - 1;
+        final long subBucket = index % SUB_BUCKET_COUNT;
+        final long highest = ((SUB_BUCKET_COUNT + subBucket + 1) << shift) - 1;
+        return highest < 0 ? Long.MAX_VALUE : highest;
+    }
+}
@@ -0,0 +1,45 @@
+package enterprises.iwakura.irminsul.metrics;
+
+import lombok.Value;
+
+/**
+ * Point-in-time snapshot of a {@link LatencyHistogram}. All latencies are in nanoseconds.
+ */
+@Value
+public class LatencySnapshot {
+
+    /**
+     * Snapshot of a histogram without any recorded values
+     */
+    public static final LatencySnapshot EMPTY = new LatencySnapshot(0, 0, 0, 0, 0, 0);
+
+    /**
+     * Number of recorded values
+     */
+    long count;
+
+    /**
+     * Mean of recorded values
+     */
+    long mean;
+
+    /**
+     * 50th percentile (median) of recorded values
+     */
+    long p50;
+
+    /**
+     * 90th percentile of recorded values
+     */
+    long p90;
+
+    /**
+     * 99th percentile of recorded values
+     */
+    long p99;
+
+    /**
+     * Maximum of recorded values
+     */
+    long max;
+}
@@ -0,0 +1,82 @@
+package enterprises.iwakura.irminsul.metrics;
+
+import java.util.Set;
+
+/**
+ * Records latencies of transaction phases keyed by the transaction name. Implementations must be thread-safe and
+ * should be cheap to record into, since recording happens on every transaction.
+ *
+ * @see HistogramTransactionMetrics
+ */
+public interface TransactionMetrics {
+
+    /**
+     * Metrics which do not record anything.
+     */
+    TransactionMetrics NOOP = new TransactionMetrics() {
+        @Override
+        public void recordPhase(String transactionName, TransactionPhase phase, long durationNanos) {
+        }
+
+        @Override
+        public void recordRetry(String transactionName) {
+        }
+
+        @Override
+        public Set<String> getTransactionNames() {
+            return Set.of();
+        }
+
+        @Override
+        public LatencySnapshot getSnapshot(String transactionName, TransactionPhase phase) {
+            return LatencySnapshot.EMPTY;
+        }
+
+        @Override
+        public long getRetryCount(String transactionName) {
+            return 0;
+        }
+    };
+
+    /**
+     * Records the duration of a transaction phase.
+     *
+     * @param transactionName the name of the transaction
+     * @param phase           the transaction phase
+     * @param durationNanos   the duration of the phase in nanoseconds
+     */
+    void recordPhase(String transactionName, TransactionPhase phase, long durationNanos);
+
+    /**
+     * Records a retry of a transaction.
+     *
+     * @param transactionName the name of the transaction
+     */
+    void recordRetry(String transactionName);
+
+    /**
+     * Returns the names of the recorded transactions.
+     *
+     * @return the set of transaction names
+     */
+    Set<String> getTransactionNames();
+
+    /**
+     * Returns the latency snapshot of a transaction phase.
+     *
+     * @param transactionName the name of the transaction
+     * @param phase           the transaction phase
+     *
+     * @return the latency snapshot, empty if nothing was recorded
+     */
+    LatencySnapshot getSnapshot(String transactionName, TransactionPhase phase);
+
+    /**
+     * Returns the number of retries of a transaction.
+     *
+     * @param transactionName the name of the transaction
+     *
+     * @return the number of retries
+     */
+    long getRetryCount(String transactionName);
+}
@@ -0,0 +1,32 @@
+package enterprises.iwakura.irminsul.metrics;
+
+/**
+ * Phases of a transaction recorded by {@link TransactionMetrics}
+ */
+public enum TransactionPhase {
+
+    /**
+     * Beginning of the transaction, including the wait for a connection from the pool
+     */
+    BEGIN,
+
+    /**
+     * Body of the transaction, i.e., the work done within the transaction
+     */
+    BODY,
+
+    /**
+     * Commit of the transaction
+     */
+    COMMIT,
+
+    /**
+     * Rollback of the transaction
+     */
+    ROLLBACK,
+
+    /**
+     * After commit actions of the transaction
+     */
+    AFTER_COMMIT_ACTIONS
+}
@@ -1,6 +1,10 @@
 package enterprises.iwakura.irminsul.repository;
 
+import enterprises.iwakura.irminsul.IrminsulContext;
 import enterprises.iwakura.irminsul.IrminsulDatabaseService;
+import enterprises.iwakura.irminsul.TransactionOptions;
+import enterprises.iwakura.irminsul.cache.EntityCache;
+import enterprises.iwakura.irminsul.cache.NegativeLookupCache;
 import enterprises.iwakura.irminsul.util.TriFunction;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.LockModeType;
@@ -9,12 +13,25 @@ import jakarta.persistence.criteria.CriteriaBuilder;
 import jakarta.persistence.criteria.CriteriaQuery;
 import jakarta.persistence.criteria.Predicate;
 import jakarta.persistence.criteria.Root;
+import lombok.AccessLevel;
 import lombok.Getter;
+import lombok.Setter;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Stream;
 
+import org.hibernate.Hibernate;
+import org.hibernate.Session;
+import org.hibernate.collection.spi.PersistentCollection;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
 import org.hibernate.jpa.internal.PersistenceUnitUtilImpl;
+import org.hibernate.type.CollectionType;
+import org.hibernate.type.Type;
 
 /**
  * Base repository class for handling database operations within one entity.
@@ -25,11 +42,50 @@ import org.hibernate.jpa.internal.PersistenceUnitUtilImpl;
 @Getter
 public abstract class BaseRepository<TEntity, TId> {
 
+    /**
+     * Chunk size of {@link #saveAll(List)} if JDBC batching is disabled.
+     */
+    private static final int UNBATCHED_CHUNK_SIZE = 500;
+
+    // Upper bound of IN lists if the dialect has no limit, as huge lists are slow to parse and plan
+    private static final int MAX_IN_LIST_SIZE = 16_384;
+
+    // Reads filling the caches run on the primary, as a result read from a lagging replica would outlive the lag
+    private static final TransactionOptions CACHED_READ = TransactionOptions.builder()
+            .readOnly(true)
+            .primary(true)
+            .build();
+
     /**
      * The database service used for database operations.
      */
     protected final IrminsulDatabaseService databaseService;
 
+    /**
+     * The cache of {@link #findById(Object)}, or null if entities are not cached. Disabled by default.
+     */
+    @Setter
+    protected volatile EntityCache<TId, TEntity> findByIdCache;
+
+    /**
+     * The cache of IDs not found by {@link #findById(Object)} or {@link #existsById(Object)}, or null if misses are not
+     * cached. Disabled by default.
+     */
+    @Setter
+    protected volatile NegativeLookupCache<TId> negativeLookupCache;
+
+    @Getter(AccessLevel.NONE)
+    private volatile String idAttributeName;
+
+    @Getter(AccessLevel.NONE)
+    private volatile String existsByIdHql;
+
+    @Getter(AccessLevel.NONE)
+    private volatile String deleteAllByIdHql;
+
+    @Getter(AccessLevel.NONE)
+    private volatile int inListChunkSize;
+
     /**
      * Initializes the repository with the database service.
      *
@@ -65,44 +121,183 @@ public abstract class BaseRepository<TEntity, TId> {
     }
 
     /**
-     * Finds an entity by its ID.
+     * Finds an entity by its ID. Runs within a read-only transaction, unless joining an existing one.<br>
+     * If the {@link #getFindByIdCache()} is set and there is no current transaction, the entity is served from the
+     * cache, or cached once it is read. The cache keeps its own copy of the entity and each caller gets a new copy, see
+     * {@link #copyEntity(Object)}, so changes of a returned entity are not seen by other callers until it is saved.
+     * Within a transaction, the cache is bypassed, so the entity is managed by the session. Cached entities are evicted
+     * as soon as they are written through this repository, and once more when the writing transaction commits.<br>
+     * Similarly, if the {@link #getNegativeLookupCache()} is set, IDs which were not found are remembered for its time to
+     * live, until an entity with the ID is written through this repository.
      *
      * @param id the ID of the entity to find
      *
-     * @return the found entity, or null if not found
+     * @return the found entity, or an empty optional if not found
      */
     public Optional<TEntity> findById(TId id) {
-        return Optional.ofNullable(databaseService.runInThreadTransaction(session -> {
+        final var cache = findByIdCache;
+        final var negativeCache = negativeLookupCache;
+        if ((cache == null && negativeCache == null) || IrminsulContext.hasCurrent()) {
+            return Optional.ofNullable(loadById(id, TransactionOptions.READ_ONLY));
+        }
+
+        if (cache != null) {
+            final var cachedEntity = cache.get(id);
+            if (cachedEntity != null) {
+                return Optional.of(copyEntity(cachedEntity));
+            }
+        }
+        if (negativeCache != null && negativeCache.isKnownMissing(id)) {
+            return Optional.empty();
+        }
+
+        final long stamp = cache != null ? cache.getStamp(id) : 0;
+        final long negativeStamp = negativeCache != null ? negativeCache.getStamp(id) : 0;
+        final var entity = loadById(id, CACHED_READ);
+        if (entity != null) {
+            if (cache != null) {
+                cache.put(id, copyEntity(entity), stamp);
+            }
+        } else if (negativeCache != null) {
+            negativeCache.recordMiss(id, negativeStamp);
+        }
+        return Optional.ofNullable(entity);
+    }
+
+    /**
+     * Finds the entities with the given IDs, skipping the IDs which were not found. See
+     * {@link #findAllById(Collection, boolean)}.
+     *
+     * @param ids the IDs of the entities to find
+     *
+     * @return the found entities, in the order of the IDs
+     */
+    public List<TEntity> findAllById(Collection<TId> ids) {
+        return findAllById(ids, false);
+    }
+
+    /**
+     * Finds the entities with the given IDs with Hibernate's multi-load, which reads them with IN queries of
+     * {@link enterprises.iwakura.irminsul.DatabaseServiceConfiguration#getMultiLoadBatchSize()} IDs each. Entities
+     * already in the session are not read again. Runs within a read-only transaction, unless joining an existing one.
+     * The caches of {@link #findById(Object)} are not used.
+     *
+     * @param ids         the IDs of the entities to find
+     * @param includeNull true to return null in place of the IDs which were not found, false to skip them
+     *
+     * @return the found entities, in the order of the IDs
+     */
+    public List<TEntity> findAllById(Collection<TId> ids, boolean includeNull) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        final var idList = new ArrayList<>(ids);
+        final int batchSize = databaseService.getDatabaseConfiguration().getMultiLoadBatchSize();
+        return databaseService.runInReadOnlyTransaction(session -> {
+            IrminsulContext.getCurrent().checkTimeout();
+            var multiLoadAccess = session.byMultipleIds(getEntityClass())
+                    .enableSessionCheck(true)
+                    .enableOrderedReturn(true);
+            if (batchSize > 0) {
+                multiLoadAccess = multiLoadAccess.withBatchSize(batchSize);
+            }
+            final var entities = multiLoadAccess.multiLoad(idList);
+            if (includeNull) {
+                return entities;
+            }
+            final var foundEntities = new ArrayList<TEntity>(entities.size());
+            for (TEntity entity : entities) {
+                if (entity != null) {
+                    foundEntities.add(entity);
+                }
+            }
+            return foundEntities;
+        });
+    }
+
+    /**
+     * Reads an entity by its ID from the database.
+     *
+     * @param id      the ID of the entity to read
+     * @param options the options of the read-only transaction
+     *
+     * @return the entity, or null if not found
+     */
+    private TEntity loadById(TId id, TransactionOptions options) {
+        return databaseService.runInThreadTransaction(options, session -> {
+            IrminsulContext.getCurrent().checkTimeout();
             return session.find(getEntityClass(), id, LockModeType.NONE);
-        }));
+        });
     }
 
     /**
-     * Checks if an entity exists by its ID.
+     * Checks if an entity exists by its ID. If the {@link #getNegativeLookupCache()} is set and there is no current
+     * transaction, IDs known not to exist are answered from the cache.
      *
      * @param id the ID of the entity to check
      *
      * @return true if the entity exists, false otherwise
      */
     public boolean existsById(TId id) {
-        return databaseService.runInThreadTransaction(session -> {
-            var hql = "SELECT COUNT(e) FROM " + getEntityClass().getSimpleName() + " e WHERE e.id = :id";
-            Long count = session.createQuery(hql, Long.class)
+        final var negativeCache = negativeLookupCache;
+        if (negativeCache == null || IrminsulContext.hasCurrent()) {
+            return queryExistsById(id, TransactionOptions.READ_ONLY);
+        }
+
+        if (negativeCache.isKnownMissing(id)) {
+            return false;
+        }
+        final long stamp = negativeCache.getStamp(id);
+        final boolean exists = queryExistsById(id, CACHED_READ);
+        if (!exists) {
+            negativeCache.recordMiss(id, stamp);
+        }
+        return exists;
+    }
+
+    /**
+     * Checks if an entity exists by its ID in the database. Selects a constant limited to a single row, so the database
+     * stops at the first match instead of counting. The HQL is built once, so its interpretation is reused from
+     * Hibernate's query plan cache.
+     *
+     * @param id      the ID of the entity to check
+     * @param options the options of the read-only transaction
+     *
+     * @return true if the entity exists, false otherwise
+     */
+    private boolean queryExistsById(TId id, TransactionOptions options) {
+        final var hql = getExistsByIdHql();
+        return databaseService.runInThreadTransaction(options, session -> {
+            return !IrminsulContext.getCurrent().applyQueryTimeout(session.createQuery(hql, Integer.class))
                     .setParameter("id", id)
-                    .getSingleResult();
-            return count != null && count > 0;
+                    .setMaxResults(1)
+                    .getResultList()
+                    .isEmpty();
         });
     }
 
+    private String getExistsByIdHql() {
+        var hql = existsByIdHql;
+        if (hql == null) {
+            final var entityName = databaseService.getSessionFactory().getMetamodel().entity(getEntityClass()).getName();
+            hql = "SELECT 1 FROM " + entityName + " e WHERE e." + getIdAttributeName() + " = :id";
+            existsByIdHql = hql;
+        }
+        return hql;
+    }
+
     /**
-     * Finds all entities by criteria.
+     * Finds all entities by criteria. Runs within a read-only transaction, unless joining an existing one. If
+     * {@link enterprises.iwakura.irminsul.DatabaseServiceConfiguration#isQueryCacheEnabled()} is enabled, the results
+     * are cached in Hibernate's query cache.
      *
      * @param criteriaBuilderConsumer the criteria builder consumer
      *
      * @return the list of found entities
      */
     public List<TEntity> findByCriteria(TriFunction<Root<TEntity>, CriteriaQuery<TEntity>, CriteriaBuilder, Predicate> criteriaBuilderConsumer) {
-        return databaseService.runInThreadTransaction(session -> {
+        return databaseService.runInReadOnlyTransaction(session -> {
             var cb = session.getCriteriaBuilder();
             var query = cb.createQuery(getEntityClass());
             var root = query.from(getEntityClass());
@@ -111,10 +306,101 @@ public abstract class BaseRepository<TEntity, TId> {
             if (predicate != null) {
                 query.where(predicate);
             }
-            return session.createQuery(query).getResultList();
+            return IrminsulContext.getCurrent().applyQueryTimeout(session.createQuery(query))
+                    .setCacheable(databaseService.getDatabaseConfiguration().isQueryCacheEnabled())
+                    .getResultList();
         });
     }
 
+    /**
+     * Declares criteria once, so later calls of {@link #findByPreparedCriteria(PreparedCriteria, Map)} only bind the
+     * parameter values instead of building and translating the criteria again.
+     *
+     * @param criteriaBuilderConsumer the criteria builder consumer, which creates named parameters with
+     *                                {@link CriteriaBuilder#parameter(Class, String)}
+     *
+     * @return the prepared criteria
+     */
+    public PreparedCriteria<TEntity> prepareCriteria(TriFunction<Root<TEntity>, CriteriaQuery<?>, CriteriaBuilder, Predicate> criteriaBuilderConsumer) {
+        return new PreparedCriteria<>(getEntityClass(), criteriaBuilderConsumer);
+    }
+
+    /**
+     * Finds all entities by prepared criteria. Runs within a read-only transaction, unless joining an existing one. If
+     * {@link enterprises.iwakura.irminsul.DatabaseServiceConfiguration#isQueryCacheEnabled()} is enabled, the results
+     * are cached in Hibernate's query cache.
+     *
+     * @param preparedCriteria the prepared criteria
+     * @param parameters       the values by the parameter names
+     *
+     * @return the list of found entities
+     */
+    public List<TEntity> findByPreparedCriteria(PreparedCriteria<TEntity> preparedCriteria, Map<String, ?> parameters) {
+        return databaseService.runInReadOnlyTransaction(session -> {
+            final var hql = preparedCriteria.getSelectHql(session);
+            final var query = IrminsulContext.getCurrent()
+                    .applyQueryTimeout(session.createQuery(hql, getEntityClass()));
+            return PreparedCriteria.bindParameters(query, parameters)
+                    .setCacheable(databaseService.getDatabaseConfiguration().isQueryCacheEnabled())
+                    .getResultList();
+        });
+    }
+
+    /**
+     * Streams all entities in the database. Calls {@link #streamByCriteria(TriFunction)} with a conjunction predicate,
+     * which matches all entities.
+     *
+     * @return the stream of entities, which must be closed
+     */
+    public Stream<TEntity> streamAll() {
+        return streamByCriteria((root, query, cb) -> cb.conjunction());
+    }
+
+    /**
+     * Streams entities by criteria with the
+     * {@link enterprises.iwakura.irminsul.DatabaseServiceConfiguration#getStreamFetchSize()} fetch size.
+     *
+     * @param criteriaBuilderConsumer the criteria builder consumer
+     *
+     * @return the stream of entities, which must be closed
+     *
+     * @see #streamByCriteria(TriFunction, int)
+     */
+    public Stream<TEntity> streamByCriteria(TriFunction<Root<TEntity>, CriteriaQuery<TEntity>, CriteriaBuilder, Predicate> criteriaBuilderConsumer) {
+        return streamByCriteria(criteriaBuilderConsumer, databaseService.getDatabaseConfiguration().getStreamFetchSize());
+    }
+
+    /**
+     * Streams entities by criteria. Unlike {@link #findByCriteria(TriFunction)}, the entities are read with a
+     * forward-only cursor and are not loaded all at once. Unless joining an existing transaction, the stream runs in its
+     * own read-only transaction, which stays open until the stream is closed, and the streamed entities are detached
+     * every {@code fetchSize} rows. See {@link IrminsulDatabaseService#streamInReadOnlyTransaction(java.util.function.Function, int)}.
+     *
+     * <pre>{@code
+     * try (var companies = companyRepository.streamAll()) {
+     *     companies.forEach(company -> export(company));
+     * }
+     * }</pre>
+     *
+     * @param criteriaBuilderConsumer the criteria builder consumer
+     * @param fetchSize               the JDBC fetch size
+     *
+     * @return the stream of entities, which must be closed
+     */
+    public Stream<TEntity> streamByCriteria(TriFunction<Root<TEntity>, CriteriaQuery<TEntity>, CriteriaBuilder, Predicate> criteriaBuilderConsumer, int fetchSize) {
+        return databaseService.streamInReadOnlyTransaction(session -> {
+            var cb = session.getCriteriaBuilder();
+            var query = cb.createQuery(getEntityClass());
+            var root = query.from(getEntityClass());
+            query.select(root);
+            var predicate = criteriaBuilderConsumer.apply(root, query, cb);
+            if (predicate != null) {
+                query.where(predicate);
+            }
+            return session.createQuery(query);
+        }, fetchSize);
+    }
+
     /**
      * Saves the entity to the database. If the entity has an ID, it will be updated. Otherwise, it will be inserted.
      * This uses the {@link #hasId(TEntity)} method to determine if the entity has an ID.
@@ -135,19 +421,50 @@ public abstract class BaseRepository<TEntity, TId> {
 
     /**
      * Saves a list of entities to the database. Each entity will be either inserted or updated based on its ID.
-     * This uses the {@link #hasId(TEntity)} method to determine if the entity has an ID.
+     * This uses the {@link #hasId(TEntity)} method to determine if the entity has an ID.<br>
+     * Entities are processed in chunks of {@link enterprises.iwakura.irminsul.DatabaseServiceConfiguration#getJdbcBatchSize()}.
+     * Existing entities of each chunk are loaded with a single query, so merging them does not select them one by one,
+     * and the session is flushed after each chunk, see {@link #flushBatch(Session, int, boolean)}. Note that
+     * {@link #save(Object)}, {@link #insert(Object)} and {@link #update(Object)} are not invoked for each entity.
      *
      * @param entities the list of entities to save
      *
-     * @return the list of saved entities
+     * @return the list of saved entities, in the same order
      */
     public List<TEntity> saveAll(List<TEntity> entities) {
         if (entities.isEmpty()) {
             return entities;
         }
 
+        final var clearSession = !IrminsulContext.hasCurrent();
         return databaseService.runInThreadTransaction(session -> {
-            return entities.stream().map(this::save).toList();
+            final var batchSize = databaseService.getDatabaseConfiguration().getJdbcBatchSize();
+            final var chunkSize = batchSize > 0 ? batchSize : UNBATCHED_CHUNK_SIZE;
+            final var savedEntities = new ArrayList<TEntity>(entities.size());
+
+            for (int chunkStart = 0; chunkStart < entities.size(); chunkStart += chunkSize) {
+                final var chunk = entities.subList(chunkStart, Math.min(chunkStart + chunkSize, entities.size()));
+
+                final var existingIds = new ArrayList<TId>(chunk.size());
+                for (TEntity entity : chunk) {
+                    if (hasId(entity)) {
+                        existingIds.add(getIdentifier(entity));
+                    }
+                }
+                loadIntoSession(session, existingIds);
+
+                for (TEntity entity : chunk) {
+                    if (hasId(entity)) {
+                        savedEntities.add(session.merge(entity));
+                    } else {
+                        session.persist(entity);
+                        savedEntities.add(entity);
+                    }
+                    flushBatch(session, savedEntities.size(), clearSession);
+                }
+            }
+            invalidateAllOnCommit(savedEntities);
+            return savedEntities;
         });
     }
 
@@ -161,22 +478,28 @@ public abstract class BaseRepository<TEntity, TId> {
     public TEntity insert(TEntity entity) {
         return databaseService.runInThreadTransaction(session -> {
             session.persist(entity);
+            invalidateOnCommit(getIdentifier(entity));
             return entity;
         });
     }
 
     /**
-     * Inserts a list of entities to the database.
+     * Inserts a list of entities to the database. The session is flushed in batches, see
+     * {@link #flushBatch(Session, int, boolean)}.
      *
      * @param entities the list of entities to save
      *
      * @return the list of saved entities
      */
     public List<TEntity> insertAll(List<TEntity> entities) {
+        final var clearSession = !IrminsulContext.hasCurrent();
         return databaseService.runInThreadTransaction(session -> {
+            int count = 0;
             for (TEntity entity : entities) {
                 session.persist(entity);
+                flushBatch(session, ++count, clearSession);
             }
+            invalidateAllOnCommit(entities);
             return entities;
         });
     }
@@ -190,20 +513,30 @@ public abstract class BaseRepository<TEntity, TId> {
      */
     public TEntity update(TEntity entity) {
         return databaseService.runInThreadTransaction(session -> {
-            return session.merge(entity);
+            final var updatedEntity = session.merge(entity);
+            invalidateOnCommit(getIdentifier(updatedEntity));
+            return updatedEntity;
         });
     }
 
     /**
-     * Updates a list of entities in the database.
+     * Updates a list of entities in the database. The session is flushed in batches, see
+     * {@link #flushBatch(Session, int, boolean)}.
      *
      * @param entities the list of entities to update
      *
      * @return the list of updated entities
      */
     public List<TEntity> updateAll(List<TEntity> entities) {
+        final var clearSession = !IrminsulContext.hasCurrent();
         return databaseService.runInThreadTransaction(session -> {
-            return entities.stream().map(session::merge).toList();
+            final var updatedEntities = new ArrayList<TEntity>(entities.size());
+            for (TEntity entity : entities) {
+                updatedEntities.add(session.merge(entity));
+                flushBatch(session, updatedEntities.size(), clearSession);
+            }
+            invalidateAllOnCommit(updatedEntities);
+            return updatedEntities;
         });
     }
 
@@ -215,20 +548,26 @@ public abstract class BaseRepository<TEntity, TId> {
     public void delete(TEntity entity) {
         databaseService.runInThreadTransaction(session -> {
             session.remove(entity);
+            invalidateOnCommit(getIdentifier(entity));
             return null;
         });
     }
 
     /**
-     * Deletes a list of entities from the database.
+     * Deletes a list of entities from the database. The session is flushed in batches, see
+     * {@link #flushBatch(Session, int, boolean)}.
      *
      * @param entities the list of entities to delete
      */
     public void deleteAll(List<TEntity> entities) {
+        final var clearSession = !IrminsulContext.hasCurrent();
         databaseService.runInThreadTransaction(session -> {
+            int count = 0;
             for (TEntity entity : entities) {
                 session.remove(entity);
+                flushBatch(session, ++count, clearSession);
             }
+            invalidateAllOnCommit(entities);
             return null;
         });
     }
@@ -240,11 +579,302 @@ public abstract class BaseRepository<TEntity, TId> {
      */
     public void deleteById(TId id) {
         databaseService.runInThreadTransaction(session -> {
+            IrminsulContext.getCurrent().checkTimeout();
             TEntity entity = session.find(getEntityClass(), id);
             if (entity != null) {
                 session.remove(entity);
             }
+            invalidateOnCommit(id);
             return null;
         });
     }
+
+    /**
+     * Deletes the entities with the given IDs with chunked {@code DELETE ... WHERE id IN (...)} statements, without
+     * loading them. The chunks respect the dialect's limits of IN list elements and bind parameters, see
+     * {@link #getInListChunkSize()}. Each chunk is padded to a power of two by repeating its last ID, so the database
+     * caches only a few plans instead of one per list length.<br>
+     * Entities already loaded in the current session are not affected, so they should not be used afterward.
+     *
+     * @param ids the IDs of the entities to delete, duplicates are ignored
+     *
+     * @return the number of deleted entities
+     */
+    public int deleteAllById(Collection<TId> ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+
+        final var distinctIds = new ArrayList<>(new LinkedHashSet<>(ids));
+        final var hql = getDeleteAllByIdHql();
+        final int chunkSize = getInListChunkSize();
+        return databaseService.runInThreadTransaction(session -> {
+            int deletedCount = 0;
+            for (int from = 0; from < distinctIds.size(); from += chunkSize) {
+                final var chunk = distinctIds.subList(from, Math.min(from + chunkSize, distinctIds.size()));
+                deletedCount += IrminsulContext.getCurrent().applyMutationQueryTimeout(session.createMutationQuery(hql))
+                        .setParameter("ids", padToPowerOfTwo(chunk))
+                        .executeUpdate();
+            }
+            invalidateAllByIdOnCommit(distinctIds);
+            return deletedCount;
+        });
+    }
+
+    /**
+     * Gets the maximum number of elements of IN lists, from the dialect's limits of IN list elements and bind
+     * parameters, floored to a power of two so padded lists fit.
+     *
+     * @return the maximum number of elements of IN lists
+     */
+    protected int getInListChunkSize() {
+        var chunkSize = inListChunkSize;
+        if (chunkSize == 0) {
+            final var dialect = databaseService.getSessionFactory().unwrap(SessionFactoryImplementor.class)
+                    .getJdbcServices().getDialect();
+            chunkSize = MAX_IN_LIST_SIZE;
+            if (dialect.getInExpressionCountLimit() > 0) {
+                chunkSize = Math.min(chunkSize, dialect.getInExpressionCountLimit());
+            }
+            if (dialect.getParameterCountLimit() > 0) {
+                chunkSize = Math.min(chunkSize, dialect.getParameterCountLimit());
+            }
+            chunkSize = Integer.highestOneBit(chunkSize);
+            inListChunkSize = chunkSize;
+        }
+        return chunkSize;
+    }
+
+    private String getDeleteAllByIdHql() {
+        var hql = deleteAllByIdHql;
+        if (hql == null) {
+            final var entityName = databaseService.getSessionFactory().getMetamodel().entity(getEntityClass()).getName();
+            hql = "DELETE FROM " + entityName + " e WHERE e." + getIdAttributeName() + " IN :ids";
+            deleteAllByIdHql = hql;
+        }
+        return hql;
+    }
+
+    /**
+     * Pads the IDs to the next power of two by repeating the last ID, which does not change the result of IN.
+     *
+     * @param ids the IDs, at most {@link #getInListChunkSize()} of them
+     *
+     * @return the padded IDs
+     */
+    private static <T> List<T> padToPowerOfTwo(List<T> ids) {
+        if (Integer.bitCount(ids.size()) == 1) {
+            return ids;
+        }
+        final int paddedSize = Integer.highestOneBit(ids.size()) << 1;
+        final var padded = new ArrayList<T>(paddedSize);
+        padded.addAll(ids);
+        final var lastId = ids.get(ids.size() - 1);
+        while (padded.size() < paddedSize) {
+            padded.add(lastId);
+        }
+        return padded;
+    }
+
+    /**
+     * Invalidates all cached entities once the current transaction commits, used by set-based writes which do not know
+     * the IDs of the written entities. Cached misses stay valid, as such writes do not create entities. Does nothing if
+     * no cache is set.
+     */
+    protected void invalidateAllCachedOnCommit() {
+        final var cache = findByIdCache;
+        if (cache != null) {
+            IrminsulContext.addAfterCommitAction(cache::invalidateAll);
+        }
+    }
+
+    /**
+     * Invalidates the cached entity and the cached miss of its ID right away and once more when the current
+     * transaction commits. The written instance may be the cached one, so it must not stay cached if the transaction
+     * rolls back, while entities loaded before the commit must not stay cached either. Does nothing if no cache is
+     * set.
+     *
+     * @param id the ID of the written entity
+     */
+    protected void invalidateOnCommit(TId id) {
+        final var cache = findByIdCache;
+        final var negativeCache = negativeLookupCache;
+        if ((cache == null && negativeCache == null) || id == null) {
+            return;
+        }
+        invalidateCached(cache, negativeCache, id);
+        IrminsulContext.addAfterCommitAction(() -> invalidateCached(cache, negativeCache, id));
+    }
+
+    /**
+     * Invalidates the cached entities and the cached misses of their IDs right away and once more when the current
+     * transaction commits, see {@link #invalidateOnCommit(Object)}. Does nothing if no cache is set.
+     *
+     * @param entities the written entities
+     */
+    protected void invalidateAllOnCommit(List<TEntity> entities) {
+        if ((findByIdCache == null && negativeLookupCache == null) || entities.isEmpty()) {
+            return;
+        }
+        final var ids = new ArrayList<TId>(entities.size());
+        for (TEntity entity : entities) {
+            ids.add(getIdentifier(entity));
+        }
+        invalidateAllByIdOnCommit(ids);
+    }
+
+    /**
+     * Invalidates the cached entities and the cached misses of the IDs right away and once more when the current
+     * transaction commits, see {@link #invalidateOnCommit(Object)}. Does nothing if no cache is set.
+     *
+     * @param ids the IDs of the written entities
+     */
+    protected void invalidateAllByIdOnCommit(List<TId> ids) {
+        final var cache = findByIdCache;
+        final var negativeCache = negativeLookupCache;
+        if ((cache == null && negativeCache == null) || ids.isEmpty()) {
+            return;
+        }
+        final Runnable invalidation = () -> {
+            for (TId id : ids) {
+                if (id != null) {
+                    invalidateCached(cache, negativeCache, id);
+                }
+            }
+        };
+        invalidation.run();
+        IrminsulContext.addAfterCommitAction(invalidation);
+    }
+
+    private void invalidateCached(EntityCache<TId, TEntity> cache, NegativeLookupCache<TId> negativeCache, TId id) {
+        if (cache != null) {
+            cache.invalidate(id);
+        }
+        if (negativeCache != null) {
+            negativeCache.invalidate(id);
+        }
+    }
+
+    /**
+     * Flushes the session after every {@link enterprises.iwakura.irminsul.DatabaseServiceConfiguration#getJdbcBatchSize()}
+     * processed entities, so each flush sends full JDBC batches. If the bulk method started its own transaction, the
+     * session is cleared as well, so the persistence context does not grow with the number of entities. Entities of a
+     * joined transaction are never cleared, since the caller may still use them.
+     *
+     * @param session        the current session
+     * @param processedCount the number of entities processed so far
+     * @param clearSession   if the session should be cleared after flush
+     */
+    protected void flushBatch(Session session, int processedCount, boolean clearSession) {
+        final int batchSize = databaseService.getDatabaseConfiguration().getJdbcBatchSize();
+        if (batchSize > 0 && processedCount % batchSize == 0) {
+            session.flush();
+            if (clearSession) {
+                session.clear();
+            }
+        }
+    }
+
+    /**
+     * Gets the name of the ID attribute of the entity, from the Hibernate metamodel.
+     *
+     * @return the name of the ID attribute
+     */
+    public String getIdAttributeName() {
+        var name = idAttributeName;
+        if (name == null) {
+            final var entityType = databaseService.getSessionFactory().getMetamodel().entity(getEntityClass());
+            name = entityType.getId(entityType.getIdType().getJavaType()).getName();
+            idAttributeName = name;
+        }
+        return name;
+    }
+
+    /**
+     * Copies a detached entity for the cache of {@link #findById(Object)}, so no caller shares an instance with the
+     * cache or other callers. The state is copied with Hibernate's types, so mutable basic values and embeddables are
+     * copied deeply. Initialized collections are copied into new collections, while uninitialized ones, which cannot be
+     * read or changed without a session, and associated entities are shared.
+     *
+     * @param entity the detached entity
+     *
+     * @return the copy of the entity
+     */
+    @SuppressWarnings("unchecked")
+    protected TEntity copyEntity(TEntity entity) {
+        final var sessionFactory = databaseService.getSessionFactory().unwrap(SessionFactoryImplementor.class);
+        final var entityClass = Hibernate.getClass(entity);
+        final var persister = sessionFactory.getMappingMetamodel().getEntityDescriptor(entityClass);
+        final TEntity copy;
+        try {
+            final var constructor = entityClass.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            copy = (TEntity) constructor.newInstance();
+        } catch (ReflectiveOperationException exception) {
+            throw new IllegalStateException("Could not instantiate a copy of entity " + entityClass.getName(), exception);
+        }
+
+        final var types = persister.getPropertyTypes();
+        final var values = persister.getValues(entity);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = copyValue(types[i], values[i], sessionFactory);
+        }
+        persister.setValues(copy, values);
+        final var identifierMapping = persister.getIdentifierMapping();
+        identifierMapping.setIdentifier(copy, identifierMapping.getIdentifier(entity), null);
+        return copy;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object copyValue(Type type, Object value, SessionFactoryImplementor sessionFactory) {
+        if (value == null) {
+            return null;
+        }
+        if (type instanceof CollectionType collectionType) {
+            if (value instanceof PersistentCollection<?> collection && !collection.wasInitialized()) {
+                return value;
+            }
+            final var copy = collectionType.instantiate(-1);
+            if (copy instanceof Map map && value instanceof Map original) {
+                map.putAll(original);
+                return copy;
+            } else if (copy instanceof Collection collection && value instanceof Collection original) {
+                collection.addAll(original);
+                return copy;
+            }
+            return value;
+        }
+        return type.deepCopy(value, sessionFactory);
+    }
+
+    /**
+     * Gets the ID of the entity.
+     *
+     * @param entity the entity
+     *
+     * @return the ID of the entity, or null if it does not have one
+     */
+    @SuppressWarnings("unchecked")
+    protected TId getIdentifier(TEntity entity) {
+        final PersistenceUnitUtil persistenceUnitUtil = databaseService.getSessionFactory().getPersistenceUnitUtil();
+        return (TId) persistenceUnitUtil.getIdentifier(entity);
+    }
+
+    /**
+     * Loads the entities with the given IDs into the session with a single query, so they are managed by the session.
+     *
+     * @param session the current session
+     * @param ids     the IDs of the entities to load
+     */
+    private void loadIntoSession(Session session, List<TId> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+
+        final var cb = session.getCriteriaBuilder();
+        final var query = cb.createQuery(getEntityClass());
+        final var root = query.from(getEntityClass());
+        query.select(root).where(root.get(getIdAttributeName()).in(ids));
+        IrminsulContext.getCurrent().applyQueryTimeout(session.createQuery(query)).getResultList();
+    }
 }
@@ -0,0 +1,313 @@
+package enterprises.iwakura.irminsul.repository;
+
+import enterprises.iwakura.irminsul.IrminsulContext;
+import enterprises.iwakura.irminsul.TransactionOptions;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.hibernate.Session;
+import org.hibernate.engine.spi.SessionImplementor;
+
+/**
+ * Coalesces small writes of concurrent callers into group commits. Entities enqueued via {@link #insert(Object)} or
+ * {@link #save(Object)} are gathered by a background thread for up to {@link #getMaxBatchSize()} entities or
+ * {@link #getMaxDelay()}, whichever comes first, and then written in one transaction, so they share a single commit
+ * (and a single JDBC batch, if batching is enabled).<br>
+ * Each caller gets a future completed after the commit. If the group transaction fails, each write of the group is
+ * retried in its own transaction, so only the futures of the failing writes are completed exceptionally.<br>
+ * Futures are completed on the writer's thread; use the async variants of the {@link CompletableFuture} methods for
+ * long-running dependent actions, otherwise they delay the next group.
+ *
+ * @param <TEntity> the entity type
+ */
+@Slf4j
+@Getter
+public class GroupCommitWriter<TEntity> implements AutoCloseable {
+
+    /**
+     * The default maximum number of entities written in one transaction.
+     */
+    public static final int DEFAULT_MAX_BATCH_SIZE = 100;
+
+    /**
+     * The default maximum time the first entity of a group waits for other entities.
+     */
+    public static final Duration DEFAULT_MAX_DELAY = Duration.ofMillis(10);
+
+    /**
+     * The default maximum number of entities waiting to be written.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 10_000;
+
+    /**
+     * The repository used to write the entities.
+     */
+    private final BaseRepository<TEntity, ?> repository;
+
+    /**
+     * The maximum number of entities written in one transaction.
+     */
+    private final int maxBatchSize;
+
+    /**
+     * The maximum time the first entity of a group waits for other entities.
+     */
+    private final Duration maxDelay;
+
+    /**
+     * The transaction options of the group transactions. Named {@code group-commit:<entity name>}, so the group
+     * transactions may be told apart in {@link enterprises.iwakura.irminsul.metrics.TransactionMetrics}.
+     */
+    private final TransactionOptions transactionOptions;
+
+    @Getter(AccessLevel.NONE)
+    private final BlockingQueue<PendingWrite<TEntity>> queue;
+
+    @Getter(AccessLevel.NONE)
+    private final Thread writerThread;
+
+    private volatile boolean closed;
+
+    /**
+     * Creates a new group commit writer with the default batch size, delay and queue capacity and starts its thread.
+     *
+     * @param repository the repository used to write the entities
+     */
+    public GroupCommitWriter(BaseRepository<TEntity, ?> repository) {
+        this(repository, DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_DELAY, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Creates a new group commit writer and starts its thread.
+     *
+     * @param repository    the repository used to write the entities
+     * @param maxBatchSize  the maximum number of entities written in one transaction
+     * @param maxDelay      the maximum time the first entity of a group waits for other entities
+     * @param queueCapacity the maximum number of entities waiting to be written
+     */
+    public GroupCommitWriter(BaseRepository<TEntity, ?> repository, int maxBatchSize, Duration maxDelay, int queueCapacity) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("Max batch size must be at least 1");
+        }
+        this.repository = repository;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelay = maxDelay;
+        this.transactionOptions = TransactionOptions.builder()
+                .name("group-commit:" + repository.getEntityClass().getSimpleName())
+                .build();
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.writerThread = new Thread(this::runWriter, "irminsul-group-commit-" + repository.getEntityClass().getSimpleName());
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * Enqueues the entity to be inserted, see {@link BaseRepository#insert(Object)}.
+     *
+     * @param entity the entity to insert
+     *
+     * @return the future completed with the inserted entity after commit. If the queue is full, the future is
+     * completed exceptionally with {@link RejectedExecutionException}.
+     *
+     * @throws IllegalStateException if the writer is closed
+     */
+    public CompletableFuture<TEntity> insert(TEntity entity) {
+        return enqueue(entity, true);
+    }
+
+    /**
+     * Enqueues the entity to be saved, see {@link BaseRepository#save(Object)}.
+     *
+     * @param entity the entity to save
+     *
+     * @return the future completed with the saved entity after commit. If the queue is full, the future is
+     * completed exceptionally with {@link RejectedExecutionException}.
+     *
+     * @throws IllegalStateException if the writer is closed
+     */
+    public CompletableFuture<TEntity> save(TEntity entity) {
+        return enqueue(entity, false);
+    }
+
+    /**
+     * Closes the writer. Already enqueued entities are written before this method returns.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            writerThread.join();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Writes enqueued concurrently with closing
+        final var remaining = new ArrayList<PendingWrite<TEntity>>();
+        queue.drainTo(remaining);
+        for (PendingWrite<TEntity> write : remaining) {
+            write.future.completeExceptionally(new IllegalStateException("Group commit writer is closed"));
+        }
+    }
+
+    private CompletableFuture<TEntity> enqueue(TEntity entity, boolean insert) {
+        if (closed) {
+            throw new IllegalStateException("Group commit writer is closed");
+        }
+
+        final var write = new PendingWrite<>(entity, insert, repository.hasId(entity));
+        if (!queue.offer(write)) {
+            write.future.completeExceptionally(new RejectedExecutionException("Group commit queue is full"));
+        } else if (closed && queue.remove(write)) {
+            // Closed after the check above and the queue was already drained, nobody else would complete the write
+            write.future.completeExceptionally(new IllegalStateException("Group commit writer is closed"));
+        }
+        return write.future;
+    }
+
+    private void runWriter() {
+        final var group = new ArrayList<PendingWrite<TEntity>>(maxBatchSize);
+        while (!closed || !queue.isEmpty()) {
+            try {
+                final var first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                group.add(first);
+
+                final var deadline = System.nanoTime() + maxDelay.toNanos();
+                while (group.size() < maxBatchSize) {
+                    final var remainingNanos = deadline - System.nanoTime();
+                    final var next = remainingNanos > 0 ? queue.poll(remainingNanos, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    group.add(next);
+                }
+
+                writeGroup(group);
+            } catch (InterruptedException exception) {
+                // Write what is gathered, the remaining writes fail on close
+                writeGroup(group);
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                group.clear();
+            }
+        }
+    }
+
+    /**
+     * Writes the group in one transaction. If the group transaction fails, writes each entity of the group in its own
+     * transaction. Once the group transaction has committed, the entities are never written again, even if an after
+     * commit action of the transaction fails.
+     *
+     * @param group the writes to write
+     */
+    private void writeGroup(List<PendingWrite<TEntity>> group) {
+        if (group.isEmpty()) {
+            return;
+        }
+
+        final var committed = new AtomicBoolean();
+        try {
+            repository.getDatabaseService().runInThreadTransaction(transactionOptions, session -> {
+                // Added first, so it runs before the after commit actions of the writes, which may fail
+                IrminsulContext.addAfterCommitAction(() -> committed.set(true));
+                for (PendingWrite<TEntity> write : group) {
+                    if (!write.hadId) {
+                        // A rolled back attempt of the group transaction, retried by the retry policy, may have
+                        // assigned a generated ID
+                        resetIdentifier(session, write.entity);
+                    }
+                    write.result = write(write);
+                }
+                return null;
+            });
+        } catch (Exception groupException) {
+            if (!committed.get()) {
+                if (group.size() > 1) {
+                    log.debug("Group commit of {} {} entities failed, writing them one by one",
+                            group.size(), repository.getEntityClass().getSimpleName(), groupException);
+                }
+                for (PendingWrite<TEntity> write : group) {
+                    writeAlone(write, group.size() == 1 ? groupException : null);
+                }
+                return;
+            }
+            log.warn("Group commit of {} {} entities committed, but its after commit actions failed",
+                    group.size(), repository.getEntityClass().getSimpleName(), groupException);
+        }
+
+        for (PendingWrite<TEntity> write : group) {
+            write.future.complete(write.result);
+        }
+    }
+
+    /**
+     * Writes the entity in its own transaction, unless it is the only write of the failed group.
+     *
+     * @param write          the write
+     * @param groupException the exception of the group transaction if the write was alone in it, otherwise null
+     */
+    private void writeAlone(PendingWrite<TEntity> write, Exception groupException) {
+        if (groupException != null) {
+            write.future.completeExceptionally(groupException);
+            return;
+        }
+
+        try {
+            final var result = repository.getDatabaseService().runInThreadTransaction(transactionOptions, session -> {
+                if (!write.hadId) {
+                    // The rolled back group transaction may have assigned a generated ID
+                    resetIdentifier(session, write.entity);
+                }
+                return write(write);
+            });
+            write.future.complete(result);
+        } catch (Exception exception) {
+            write.future.completeExceptionally(exception);
+        }
+    }
+
+    private TEntity write(PendingWrite<TEntity> write) {
+        return write.insert ? repository.insert(write.entity) : repository.save(write.entity);
+    }
+
+    private void resetIdentifier(Session session, TEntity entity) {
+        final var sessionImplementor = session.unwrap(SessionImplementor.class);
+        sessionImplementor.getFactory().getMappingMetamodel()
+                .getEntityDescriptor(repository.getEntityClass())
+                .setIdentifier(entity, null, sessionImplementor);
+    }
+
+    /**
+     * Entity waiting to be written.
+     *
+     * @param <TEntity> the entity type
+     */
+    private static final class PendingWrite<TEntity> {
+
+        private final TEntity entity;
+        private final boolean insert;
+        private final boolean hadId;
+        private final CompletableFuture<TEntity> future = new CompletableFuture<>();
+        private TEntity result;
+
+        private PendingWrite(TEntity entity, boolean insert, boolean hadId) {
+            this.entity = entity;
+            this.insert = insert;
+            this.hadId = hadId;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package enterprises.iwakura.irminsul.repository;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Page of entities returned by keyset pagination.
+ *
+ * @param <TEntity> the entity type
+ */
+@Value
+public class KeysetPage<TEntity> {
+
+    /**
+     * The entities of the page
+     */
+    List<TEntity> content;
+
+    /**
+     * Opaque token to pass for the next page, or null if this is the last page
+     */
+    String nextToken;
+
+    /**
+     * Checks if there is a next page.
+     *
+     * @return true if there is a next page, false otherwise
+     */
+    public boolean hasNext() {
+        return nextToken != null;
+    }
+}
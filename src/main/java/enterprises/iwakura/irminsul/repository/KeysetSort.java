@@ -0,0 +1,145 @@
+package enterprises.iwakura.irminsul.repository;
+
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import lombok.Value;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ordering of keyset pagination, see {@link RepositoryExtension#findByCriteriaKeyset(KeysetSort, int, String, enterprises.iwakura.irminsul.util.TriFunction)}.
+ * The ID of the entity is always appended as the last ordering column (the tiebreaker), so the ordering is stable even
+ * if the sort attributes are not unique. Sort attributes must not be nullable.
+ * <pre>{@code
+ * KeysetSort.ascending("name").thenDescending("createdAt");
+ * }</pre>
+ */
+@Value
+public class KeysetSort {
+
+    /**
+     * Ordering by the ID only.
+     */
+    public static final KeysetSort BY_ID = new KeysetSort(List.of());
+
+    /**
+     * The orders, without the ID tiebreaker.
+     */
+    List<Order> orders;
+
+    /**
+     * Creates a new ordering by the given attribute in ascending order.
+     *
+     * @param attribute the name of the attribute
+     *
+     * @return the ordering
+     */
+    public static KeysetSort ascending(String attribute) {
+        return BY_ID.thenAscending(attribute);
+    }
+
+    /**
+     * Creates a new ordering by the given attribute in descending order.
+     *
+     * @param attribute the name of the attribute
+     *
+     * @return the ordering
+     */
+    public static KeysetSort descending(String attribute) {
+        return BY_ID.thenDescending(attribute);
+    }
+
+    /**
+     * Creates a new ordering with the given attribute appended in ascending order.
+     *
+     * @param attribute the name of the attribute
+     *
+     * @return the ordering
+     */
+    public KeysetSort thenAscending(String attribute) {
+        return then(new Order(attribute, true));
+    }
+
+    /**
+     * Creates a new ordering with the given attribute appended in descending order.
+     *
+     * @param attribute the name of the attribute
+     *
+     * @return the ordering
+     */
+    public KeysetSort thenDescending(String attribute) {
+        return then(new Order(attribute, false));
+    }
+
+    private KeysetSort then(Order order) {
+        final var newOrders = new ArrayList<>(orders);
+        newOrders.add(order);
+        return new KeysetSort(List.copyOf(newOrders));
+    }
+
+    /**
+     * Returns the orders with the ID tiebreaker appended, unless the last order is already by the ID.
+     *
+     * @param idAttributeName the name of the ID attribute
+     *
+     * @return the orders with the tiebreaker
+     */
+    List<Order> withTiebreaker(String idAttributeName) {
+        if (!orders.isEmpty() && orders.get(orders.size() - 1).getAttribute().equals(idAttributeName)) {
+            return orders;
+        }
+        final var tiebrokenOrders = new ArrayList<>(orders);
+        tiebrokenOrders.add(new Order(idAttributeName, true));
+        return tiebrokenOrders;
+    }
+
+    /**
+     * Creates the predicate matching rows after the last key, i.e.
+     * {@code (a > :a) or (a = :a and b > :b) or (a = :a and b = :b and id > :id)} for ascending orders.
+     *
+     * @param cb      the criteria builder
+     * @param orders  the orders with the tiebreaker
+     * @param paths   the paths of the order attributes
+     * @param lastKey the values of the order attributes of the last row
+     *
+     * @return the predicate
+     */
+    static Predicate createSeekPredicate(CriteriaBuilder cb, List<Order> orders, List<Path<?>> paths, List<Object> lastKey) {
+        final var disjunction = new ArrayList<Predicate>(orders.size());
+        for (int i = 0; i < orders.size(); i++) {
+            final var conjunction = new ArrayList<Predicate>(i + 1);
+            for (int j = 0; j < i; j++) {
+                conjunction.add(cb.equal(paths.get(j), lastKey.get(j)));
+            }
+            conjunction.add(compare(cb, paths.get(i), lastKey.get(i), orders.get(i).isAscending()));
+            disjunction.add(cb.and(conjunction.toArray(Predicate[]::new)));
+        }
+        return cb.or(disjunction.toArray(Predicate[]::new));
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Predicate compare(CriteriaBuilder cb, Path<?> path, Object value, boolean ascending) {
+        final var expression = (Expression<Comparable>) path;
+        return ascending ? cb.greaterThan(expression, (Comparable) value) : cb.lessThan(expression, (Comparable) value);
+    }
+
+    /**
+     * Order by one attribute.
+     */
+    @Value
+    public static class Order {
+
+        /**
+         * The name of the attribute
+         */
+        String attribute;
+
+        /**
+         * If the order is ascending
+         */
+        boolean ascending;
+    }
+}
@@ -0,0 +1,165 @@
+package enterprises.iwakura.irminsul.repository;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Encodes the last key of a keyset page into an opaque continuation token and back. Each value is written as a type
+ * tag and its string form, and the token is encoded with URL-safe Base64. Java serialization is deliberately not used,
+ * since the tokens come from clients.
+ */
+final class KeysetToken {
+
+    private static final byte VERSION = 1;
+
+    private KeysetToken() {
+    }
+
+    /**
+     * Encodes the key values.
+     *
+     * @param values the key values
+     *
+     * @return the continuation token
+     *
+     * @throws IllegalArgumentException if a value is null or of an unsupported type
+     */
+    static String encode(List<Object> values) {
+        final var bytes = new ByteArrayOutputStream();
+        try (var output = new DataOutputStream(bytes)) {
+            output.writeByte(VERSION);
+            output.writeShort(values.size());
+            for (Object value : values) {
+                output.writeUTF(tagOf(value));
+                output.writeUTF(value instanceof Enum<?> enumValue ? enumValue.name() : value.toString());
+            }
+        } catch (IOException exception) {
+            throw new IllegalStateException("Could not encode keyset token", exception);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+    }
+
+    /**
+     * Decodes the key values and checks them against the types of the sort attributes.
+     *
+     * @param token the continuation token
+     * @param types the Java types of the sort attributes
+     *
+     * @return the key values
+     *
+     * @throws IllegalArgumentException if the token is malformed or does not match the sort attributes
+     */
+    static List<Object> decode(String token, List<Class<?>> types) {
+        try (var input = new DataInputStream(new ByteArrayInputStream(Base64.getUrlDecoder().decode(token)))) {
+            if (input.readByte() != VERSION) {
+                throw new IllegalArgumentException("Unsupported keyset token version");
+            }
+            final int size = input.readShort();
+            if (size != types.size()) {
+                throw new IllegalArgumentException("Keyset token does not match the sort, expected " + types.size()
+                        + " values, got " + size);
+            }
+            final var values = new ArrayList<Object>(size);
+            for (int i = 0; i < size; i++) {
+                final var tag = input.readUTF();
+                final var value = parse(tag, input.readUTF(), types.get(i));
+                if (!wrap(types.get(i)).isInstance(value)) {
+                    throw new IllegalArgumentException("Keyset token does not match the sort, value " + i + " is "
+                            + value.getClass().getSimpleName() + ", expected " + types.get(i).getSimpleName());
+                }
+                values.add(value);
+            }
+            return values;
+        } catch (IOException | RuntimeException exception) {
+            if (exception instanceof IllegalArgumentException illegalArgumentException) {
+                throw illegalArgumentException;
+            }
+            throw new IllegalArgumentException("Malformed keyset token", exception);
+        }
+    }
+
+    private static String tagOf(Object value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Keyset pagination does not support null sort values");
+        }
+        if (value instanceof Enum<?>) {
+            return "enum";
+        }
+        return switch (value.getClass().getName()) {
+            case "java.lang.String" -> "str";
+            case "java.lang.Long" -> "long";
+            case "java.lang.Integer" -> "int";
+            case "java.lang.Short" -> "short";
+            case "java.lang.Boolean" -> "bool";
+            case "java.lang.Double" -> "double";
+            case "java.lang.Float" -> "float";
+            case "java.math.BigDecimal" -> "bigdec";
+            case "java.math.BigInteger" -> "bigint";
+            case "java.util.UUID" -> "uuid";
+            case "java.time.Instant" -> "instant";
+            case "java.time.LocalDate" -> "date";
+            case "java.time.LocalDateTime" -> "datetime";
+            case "java.time.OffsetDateTime" -> "offsetdatetime";
+            case "java.time.ZonedDateTime" -> "zoneddatetime";
+            default -> throw new IllegalArgumentException("Unsupported keyset sort value type "
+                    + value.getClass().getName());
+        };
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object parse(String tag, String value, Class<?> type) {
+        return switch (tag) {
+            case "str" -> value;
+            case "long" -> Long.valueOf(value);
+            case "int" -> Integer.valueOf(value);
+            case "short" -> Short.valueOf(value);
+            case "bool" -> Boolean.valueOf(value);
+            case "double" -> Double.valueOf(value);
+            case "float" -> Float.valueOf(value);
+            case "bigdec" -> new BigDecimal(value);
+            case "bigint" -> new BigInteger(value);
+            case "uuid" -> UUID.fromString(value);
+            case "instant" -> Instant.parse(value);
+            case "date" -> LocalDate.parse(value);
+            case "datetime" -> LocalDateTime.parse(value);
+            case "offsetdatetime" -> OffsetDateTime.parse(value);
+            case "zoneddatetime" -> ZonedDateTime.parse(value);
+            case "enum" -> {
+                if (!type.isEnum()) {
+                    throw new IllegalArgumentException("Keyset token does not match the sort, unexpected enum value");
+                }
+                yield Enum.valueOf((Class<? extends Enum>) type, value);
+            }
+            default -> throw new IllegalArgumentException("Unknown keyset token value type " + tag);
+        };
+    }
+
+    private static Class<?> wrap(Class<?> type) {
+        if (!type.isPrimitive()) {
+            return type;
+        }
+        return switch (type.getName()) {
+            case "long" -> Long.class;
+            case "int" -> Integer.class;
+            case "short" -> Short.class;
+            case "boolean" -> Boolean.class;
+            case "double" -> Double.class;
+            case "float" -> Float.class;
+            default -> type;
+        };
+    }
+}
@@ -0,0 +1,126 @@
+package enterprises.iwakura.irminsul.repository;
+
+import enterprises.iwakura.irminsul.util.TriFunction;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.util.Map;
+
+import org.hibernate.Session;
+import org.hibernate.query.SelectionQuery;
+import org.hibernate.query.sqm.tree.select.SqmSelectStatement;
+
+/**
+ * Criteria query declared once and reused by later calls. The criteria are built on first use and rendered to HQL,
+ * and values are bound to their named parameters created with {@link CriteriaBuilder#parameter(Class, String)}. As the
+ * same HQL is executed again, Hibernate reuses its SQL translation from the HQL query plan cache, regardless of
+ * {@link enterprises.iwakura.irminsul.DatabaseServiceConfiguration#isCriteriaPlanCacheEnabled()}.
+ * <pre>{@code
+ * var byName = repository.prepareCriteria((root, query, cb) -> cb.equal(root.get("name"), cb.parameter(String.class, "name")));
+ * var companies = repository.findByPreparedCriteria(byName, Map.of("name", "Company"));
+ * }</pre>
+ * Only the rendered HQL is kept, which is immutable and not bound to any session or session factory, so prepared
+ * criteria are thread-safe and should be kept in a field of the repository.
+ *
+ * @param <TEntity> the entity type
+ */
+@Getter
+public class PreparedCriteria<TEntity> {
+
+    /**
+     * The entity class type
+     */
+    private final Class<TEntity> entityClass;
+
+    /**
+     * The criteria builder consumer, called once for each kind of query
+     */
+    private final TriFunction<Root<TEntity>, CriteriaQuery<?>, CriteriaBuilder, Predicate> criteriaBuilderConsumer;
+
+    // Rendered on first use, concurrent first uses render the same HQL
+    @Getter(AccessLevel.NONE)
+    private volatile String selectHql;
+
+    @Getter(AccessLevel.NONE)
+    private volatile String countHql;
+
+    /**
+     * Creates new prepared criteria. The criteria are built on first use.
+     *
+     * @param entityClass             the entity class type
+     * @param criteriaBuilderConsumer the criteria builder consumer, which must not depend on any per-call state
+     */
+    public PreparedCriteria(Class<TEntity> entityClass, TriFunction<Root<TEntity>, CriteriaQuery<?>, CriteriaBuilder, Predicate> criteriaBuilderConsumer) {
+        this.entityClass = entityClass;
+        this.criteriaBuilderConsumer = criteriaBuilderConsumer;
+    }
+
+    /**
+     * Gets the HQL selecting the matching entities, rendering it on first use.
+     *
+     * @param session the session, whose criteria builder builds the criteria on first use
+     *
+     * @return the select HQL
+     */
+    String getSelectHql(Session session) {
+        var hql = selectHql;
+        if (hql == null) {
+            final var cb = session.getCriteriaBuilder();
+            final var query = cb.createQuery(entityClass);
+            final var root = query.from(entityClass);
+            query.select(root);
+            applyPredicate(root, query, cb);
+            hql = selectHql = toHql(query);
+        }
+        return hql;
+    }
+
+    /**
+     * Gets the HQL counting the matching entities, rendering it on first use.
+     *
+     * @param session the session, whose criteria builder builds the criteria on first use
+     *
+     * @return the count HQL
+     */
+    String getCountHql(Session session) {
+        var hql = countHql;
+        if (hql == null) {
+            final var cb = session.getCriteriaBuilder();
+            final var query = cb.createQuery(Long.class);
+            final var root = query.from(entityClass);
+            query.select(cb.count(root));
+            applyPredicate(root, query, cb);
+            hql = countHql = toHql(query);
+        }
+        return hql;
+    }
+
+    /**
+     * Binds the parameter values to the query.
+     *
+     * @param query      the query
+     * @param parameters the values by the parameter names
+     * @param <Q>        the query type
+     *
+     * @return the query
+     */
+    static <Q extends SelectionQuery<?>> Q bindParameters(Q query, Map<String, ?> parameters) {
+        parameters.forEach((name, value) -> query.setParameter(name, value));
+        return query;
+    }
+
+    private void applyPredicate(Root<TEntity> root, CriteriaQuery<?> query, CriteriaBuilder cb) {
+        final var predicate = criteriaBuilderConsumer.apply(root, query, cb);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+    }
+
+    private static String toHql(CriteriaQuery<?> query) {
+        return ((SqmSelectStatement<?>) query).toHqlString();
+    }
+}
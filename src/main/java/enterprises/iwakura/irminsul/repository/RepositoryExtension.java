@@ -1,18 +1,35 @@
 package enterprises.iwakura.irminsul.repository;
 
+import enterprises.iwakura.irminsul.IrminsulContext;
 import enterprises.iwakura.irminsul.IrminsulDatabaseService;
 import enterprises.iwakura.irminsul.util.TriFunction;
+import jakarta.persistence.Tuple;
 import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaDelete;
 import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.CriteriaUpdate;
+import jakarta.persistence.criteria.Order;
+import jakarta.persistence.criteria.Path;
 import jakarta.persistence.criteria.Predicate;
 import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Selection;
 
+import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
 /**
  * Repository extension. This interface provides additional methods for repositories to interact with the database. These methods does not
- * really fit into the main {@link BaseRepository} class due to their specific nature.
+ * really fit into the main {@link BaseRepository} class due to their specific nature.<br>
+ * Methods reading data run within a read-only transaction, unless joining an existing one. Set-based writes, such as
+ * {@link #deleteByCriteria(TriFunction)}, run within a read-write transaction.
  *
  * @param <TEntity> the entity type
  */
@@ -32,6 +49,17 @@ public interface RepositoryExtension<TEntity> {
      */
     Class<TEntity> getEntityClass();
 
+    /**
+     * Gets the name of the ID attribute of the entity, from the Hibernate metamodel. The {@link BaseRepository}
+     * caches it
+     *
+     * @return the name of the ID attribute
+     */
+    default String getIdAttributeName() {
+        final var entityType = getDatabaseService().getSessionFactory().getMetamodel().entity(getEntityClass());
+        return entityType.getId(entityType.getIdType().getJavaType()).getName();
+    }
+
     /**
      * Finds all entities by criteria with pagination.
      *
@@ -42,7 +70,7 @@ public interface RepositoryExtension<TEntity> {
      * @return the list of found entities
      */
     default List<TEntity> findByCriteriaPaged(int pageIndex, int pageSize, TriFunction<Root<TEntity>, CriteriaQuery<TEntity>, CriteriaBuilder, Predicate> criteriaBuilderConsumer) {
-        return getDatabaseService().runInThreadTransaction(session -> {
+        return getDatabaseService().runInReadOnlyTransaction(session -> {
             var cb = session.getCriteriaBuilder();
             var query = cb.createQuery(getEntityClass());
             var root = query.from(getEntityClass());
@@ -51,13 +79,256 @@ public interface RepositoryExtension<TEntity> {
             if (predicate != null) {
                 query.where(predicate);
             }
-            return session.createQuery(query)
+            return IrminsulContext.getCurrent().applyQueryTimeout(session.createQuery(query))
                           .setFirstResult(pageIndex * pageSize)
                           .setMaxResults(pageSize)
                           .getResultList();
         });
     }
 
+    /**
+     * Finds all entities by prepared criteria with pagination, see {@link BaseRepository#prepareCriteria(TriFunction)}.
+     *
+     * @param preparedCriteria the prepared criteria
+     * @param parameters       the values by the parameter names
+     * @param pageIndex        the index of the page to retrieve
+     * @param pageSize         the size of the page
+     *
+     * @return the list of found entities
+     */
+    default List<TEntity> findByPreparedCriteriaPaged(PreparedCriteria<TEntity> preparedCriteria, Map<String, ?> parameters, int pageIndex, int pageSize) {
+        return getDatabaseService().runInReadOnlyTransaction(session -> {
+            final var hql = preparedCriteria.getSelectHql(session);
+            final var query = IrminsulContext.getCurrent()
+                    .applyQueryTimeout(session.createQuery(hql, getEntityClass()));
+            return PreparedCriteria.bindParameters(query, parameters)
+                    .setFirstResult(pageIndex * pageSize)
+                    .setMaxResults(pageSize)
+                    .getResultList();
+        });
+    }
+
+    /**
+     * Finds entities by criteria with keyset (seek) pagination. Unlike {@link #findByCriteriaPaged(int, int, TriFunction)},
+     * the page is located by the sort key of the last row of the previous page, so the database does not scan the
+     * skipped rows and deep pages are as fast as the first one.
+     * <pre>{@code
+     * var sort = KeysetSort.ascending("name");
+     * var page = repository.findByCriteriaKeyset(sort, 100, null, (root, query, cb) -> cb.conjunction());
+     * while (page.hasNext()) {
+     *     page = repository.findByCriteriaKeyset(sort, 100, page.getNextToken(), (root, query, cb) -> cb.conjunction());
+     * }
+     * }</pre>
+     *
+     * @param sort                    the ordering of the entities, the ID is always used as the tiebreaker
+     * @param pageSize                the size of the page
+     * @param continuationToken       the {@link KeysetPage#getNextToken()} of the previous page, or null for the first page
+     * @param criteriaBuilderConsumer the criteria builder consumer
+     *
+     * @return the page of found entities
+     *
+     * @throws IllegalArgumentException if the continuation token is malformed or does not match the sort
+     */
+    default KeysetPage<TEntity> findByCriteriaKeyset(KeysetSort sort, int pageSize, String continuationToken, TriFunction<Root<TEntity>, CriteriaQuery<Tuple>, CriteriaBuilder, Predicate> criteriaBuilderConsumer) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be at least 1");
+        }
+
+        final var orders = sort.withTiebreaker(getIdAttributeName());
+        final List<Object> lastKey;
+        if (continuationToken != null) {
+            final var entityType = getDatabaseService().getSessionFactory().getMetamodel().entity(getEntityClass());
+            lastKey = KeysetToken.decode(continuationToken, orders.stream()
+                    .<Class<?>>map(order -> entityType.getAttribute(order.getAttribute()).getJavaType())
+                    .toList());
+        } else {
+            lastKey = null;
+        }
+
+        return getDatabaseService().runInReadOnlyTransaction(session -> {
+            var cb = session.getCriteriaBuilder();
+            var query = cb.createTupleQuery();
+            var root = query.from(getEntityClass());
+
+            // Selects the entity and its sort key, so the token does not depend on the entity's getters
+            final var keyPaths = new ArrayList<Path<?>>(orders.size());
+            final var selections = new ArrayList<Selection<?>>(orders.size() + 1);
+            selections.add(root);
+            for (KeysetSort.Order order : orders) {
+                final Path<?> path = root.get(order.getAttribute());
+                keyPaths.add(path);
+                selections.add(path);
+            }
+            query.multiselect(selections);
+
+            final var predicates = new ArrayList<Predicate>(2);
+            var predicate = criteriaBuilderConsumer.apply(root, query, cb);
+            if (predicate != null) {
+                predicates.add(predicate);
+            }
+            if (lastKey != null) {
+                predicates.add(KeysetSort.createSeekPredicate(cb, orders, keyPaths, lastKey));
+            }
+            query.where(predicates.toArray(Predicate[]::new));
+
+            final var sqlOrders = new ArrayList<Order>(orders.size());
+            for (int i = 0; i < orders.size(); i++) {
+                sqlOrders.add(orders.get(i).isAscending() ? cb.asc(keyPaths.get(i)) : cb.desc(keyPaths.get(i)));
+            }
+            query.orderBy(sqlOrders);
+
+            // One more row tells whether there is a next page
+            final var tuples = IrminsulContext.getCurrent().applyQueryTimeout(session.createQuery(query))
+                          .setMaxResults(pageSize + 1)
+                          .getResultList();
+            final var content = new ArrayList<TEntity>(Math.min(tuples.size(), pageSize));
+            for (int i = 0; i < tuples.size() && i < pageSize; i++) {
+                content.add(tuples.get(i).get(0, getEntityClass()));
+            }
+
+            String nextToken = null;
+            if (tuples.size() > pageSize) {
+                final var lastTuple = tuples.get(pageSize - 1);
+                final var nextKey = new ArrayList<Object>(orders.size());
+                for (int i = 0; i < orders.size(); i++) {
+                    nextKey.add(lastTuple.get(i + 1));
+                }
+                nextToken = KeysetToken.encode(nextKey);
+            }
+            return new KeysetPage<>(content, nextToken);
+        });
+    }
+
+    /**
+     * Reads all entities matching the criteria in parallel. The range between the minimal and maximal ID of the matching
+     * entities is split into {@code partitionCount} ranges of equal size, and each range is streamed on the
+     * {@link IrminsulDatabaseService#getAsyncExecutor()} in its own read-only transaction and pooled connection, see
+     * {@link IrminsulDatabaseService#streamInReadOnlyTransaction(java.util.function.Function, int)}.<br>
+     * Only entities with integral numeric IDs are supported. The consumer is invoked concurrently from multiple
+     * threads, so it must be thread-safe. The partitions do not join the current transaction, so they do not see its
+     * uncommitted changes. At most
+     * {@link enterprises.iwakura.irminsul.DatabaseServiceConfiguration#getMaxConnections()} partitions run
+     * concurrently. If a partition is rejected by the executor, or the consumer or the read of a partition fails, the
+     * other partitions stop reading and the returned future fails with the failure, such as
+     * {@link RejectedExecutionException}, once they are done.
+     *
+     * @param partitionCount          the number of partitions
+     * @param criteriaBuilderConsumer the criteria builder consumer, invoked once for the ID range and once per partition
+     * @param consumer                the thread-safe consumer of the entities
+     *
+     * @return the future completed with the number of read entities once all partitions are read
+     */
+    default CompletableFuture<Long> forEachByCriteriaPartitioned(int partitionCount, TriFunction<Root<TEntity>, CriteriaQuery<?>, CriteriaBuilder, Predicate> criteriaBuilderConsumer, Consumer<TEntity> consumer) {
+        if (partitionCount < 1) {
+            throw new IllegalArgumentException("Partition count must be at least 1");
+        }
+
+        final var databaseService = getDatabaseService();
+        final var idAttributeName = getIdAttributeName();
+        return databaseService.runInReadOnlyTransactionAsync(session -> {
+            var cb = session.getCriteriaBuilder();
+            var query = cb.createTupleQuery();
+            var root = query.from(getEntityClass());
+            final Path<Number> id = root.get(idAttributeName);
+            if (!isIntegralType(id.getJavaType())) {
+                throw new IllegalArgumentException(
+                        "Partitioned reads require an integral numeric ID, got " + id.getJavaType().getName());
+            }
+            query.multiselect(cb.min(id), cb.max(id));
+            var predicate = criteriaBuilderConsumer.apply(root, query, cb);
+            if (predicate != null) {
+                query.where(predicate);
+            }
+            return IrminsulContext.getCurrent().applyQueryTimeout(session.createQuery(query)).getSingleResult();
+        }).thenCompose(range -> {
+            final var min = range.get(0, Number.class);
+            final var max = range.get(1, Number.class);
+            if (min == null || max == null) {
+                return CompletableFuture.completedFuture(0L);
+            }
+
+            final long lower = min.longValue();
+            final long upper = max.longValue();
+            // Differences of the IDs are unsigned, so ranges wider than Long.MAX_VALUE do not overflow
+            final long stepMinusOne = Long.divideUnsigned(upper - lower, partitionCount);
+            final var count = new LongAdder();
+            final var aborted = new AtomicBoolean();
+            final var partitions = new ArrayList<CompletableFuture<Void>>(partitionCount);
+            long partitionStart = lower;
+            while (true) {
+                final long start = partitionStart;
+                final long end = Long.compareUnsigned(upper - start, stepMinusOne) <= 0 ? upper : start + stepMinusOne;
+                final Runnable partition = () -> {
+                    if (aborted.get()) {
+                        return;
+                    }
+                    try (var stream = databaseService.streamInReadOnlyTransaction(session -> {
+                        var cb = session.getCriteriaBuilder();
+                        var query = cb.createQuery(getEntityClass());
+                        var root = query.from(getEntityClass());
+                        final Path<Number> id = root.get(idAttributeName);
+                        query.select(root);
+                        var rangePredicate = cb.and(cb.ge(id, start), cb.le(id, end));
+                        var predicate = criteriaBuilderConsumer.apply(root, query, cb);
+                        query.where(predicate != null ? cb.and(predicate, rangePredicate) : rangePredicate);
+                        return session.createQuery(query);
+                    }, databaseService.getDatabaseConfiguration().getStreamFetchSize())) {
+                        final var iterator = stream.iterator();
+                        while (!aborted.get() && iterator.hasNext()) {
+                            consumer.accept(iterator.next());
+                            count.increment();
+                        }
+                    } catch (RuntimeException | Error throwable) {
+                        // Stops the other partitions, the returned future fails once they are done
+                        aborted.set(true);
+                        throw throwable;
+                    }
+                };
+                try {
+                    partitions.add(CompletableFuture.runAsync(partition, databaseService.getAsyncExecutor()));
+                } catch (RejectedExecutionException exception) {
+                    // Stops the submitted partitions and fails once they are done, so none outlives the future
+                    aborted.set(true);
+                    return CompletableFuture.allOf(partitions.toArray(CompletableFuture[]::new))
+                            .<Long>handle((ignored, throwable) -> {
+                                throw exception;
+                            });
+                }
+                if (end == upper) {
+                    break;
+                }
+                partitionStart = end + 1;
+            }
+            return CompletableFuture.allOf(partitions.toArray(CompletableFuture[]::new))
+                    .thenApply(ignored -> count.sum());
+        });
+    }
+
+    /**
+     * Checks if any entity matches the criteria. Selects a constant limited to a single row, so the database stops at
+     * the first match instead of counting all of them like {@link #countByCriteria(TriFunction)}.
+     *
+     * @param criteriaBuilderConsumer the criteria builder consumer
+     *
+     * @return true if any entity matches, false otherwise
+     */
+    default boolean existsByCriteria(TriFunction<Root<TEntity>, CriteriaQuery<Integer>, CriteriaBuilder, Predicate> criteriaBuilderConsumer) {
+        return getDatabaseService().runInReadOnlyTransaction(session -> {
+            var cb = session.getCriteriaBuilder();
+            var query = cb.createQuery(Integer.class);
+            var root = query.from(getEntityClass());
+            query.select(cb.literal(1));
+            var predicate = criteriaBuilderConsumer.apply(root, query, cb);
+            if (predicate != null) {
+                query.where(predicate);
+            }
+            return !IrminsulContext.getCurrent().applyQueryTimeout(session.createQuery(query))
+                    .setMaxResults(1)
+                    .getResultList()
+                    .isEmpty();
+        });
+    }
+
     /**
      * Counts the number of entities by criteria.
      *
@@ -66,7 +337,7 @@ public interface RepositoryExtension<TEntity> {
      * @return the count of entities
      */
     default long countByCriteria(TriFunction<Root<TEntity>, CriteriaQuery<Long>, CriteriaBuilder, Predicate> criteriaBuilderConsumer) {
-        return getDatabaseService().runInThreadTransaction(session -> {
+        return getDatabaseService().runInReadOnlyTransaction(session -> {
             var cb = session.getCriteriaBuilder();
             var query = cb.createQuery(Long.class);
             var root = query.from(getEntityClass());
@@ -75,7 +346,80 @@ public interface RepositoryExtension<TEntity> {
             if (predicate != null) {
                 query.where(predicate);
             }
-            return session.createQuery(query).getSingleResult();
+            return IrminsulContext.getCurrent().applyQueryTimeout(session.createQuery(query)).getSingleResult();
+        });
+    }
+
+    /**
+     * Counts the number of entities by prepared criteria, see {@link BaseRepository#prepareCriteria(TriFunction)}.
+     *
+     * @param preparedCriteria the prepared criteria
+     * @param parameters       the values by the parameter names
+     *
+     * @return the count of entities
+     */
+    default long countByPreparedCriteria(PreparedCriteria<TEntity> preparedCriteria, Map<String, ?> parameters) {
+        return getDatabaseService().runInReadOnlyTransaction(session -> {
+            final var hql = preparedCriteria.getCountHql(session);
+            final var query = IrminsulContext.getCurrent().applyQueryTimeout(session.createQuery(hql, Long.class));
+            return PreparedCriteria.bindParameters(query, parameters).getSingleResult();
+        });
+    }
+
+    /**
+     * Deletes all entities matching the criteria with a single {@code DELETE} statement, without loading them. The
+     * entities cached by the repository and Hibernate's second-level cache are invalidated. Entities already loaded in
+     * the current session are not affected, so they should not be used afterward.
+     *
+     * @param criteriaBuilderConsumer the criteria builder consumer
+     *
+     * @return the number of deleted entities
+     */
+    default int deleteByCriteria(TriFunction<Root<TEntity>, CriteriaDelete<TEntity>, CriteriaBuilder, Predicate> criteriaBuilderConsumer) {
+        return getDatabaseService().runInThreadTransaction(session -> {
+            var cb = session.getCriteriaBuilder();
+            var delete = cb.createCriteriaDelete(getEntityClass());
+            var root = delete.from(getEntityClass());
+            var predicate = criteriaBuilderConsumer.apply(root, delete, cb);
+            if (predicate != null) {
+                delete.where(predicate);
+            }
+            final int deletedCount = IrminsulContext.getCurrent().applyQueryTimeout(session.createQuery(delete))
+                    .executeUpdate();
+            invalidateCachedOnCommit();
+            return deletedCount;
+        });
+    }
+
+    /**
+     * Updates all entities matching the criteria with a single {@code UPDATE} statement, without loading them. Set the
+     * new values with {@link CriteriaUpdate#set(String, Object)} within the consumer:
+     * <pre>{@code
+     * repository.updateByCriteria((root, update, cb) -> {
+     *     update.set("name", "Renamed Company");
+     *     return cb.equal(root.get("name"), "Company");
+     * });
+     * }</pre>
+     * The entities cached by the repository and Hibernate's second-level cache are invalidated. Entities already
+     * loaded in the current session are not affected, so they should not be used afterward.
+     *
+     * @param criteriaBuilderConsumer the criteria builder consumer
+     *
+     * @return the number of updated entities
+     */
+    default int updateByCriteria(TriFunction<Root<TEntity>, CriteriaUpdate<TEntity>, CriteriaBuilder, Predicate> criteriaBuilderConsumer) {
+        return getDatabaseService().runInThreadTransaction(session -> {
+            var cb = session.getCriteriaBuilder();
+            var update = cb.createCriteriaUpdate(getEntityClass());
+            var root = update.from(getEntityClass());
+            var predicate = criteriaBuilderConsumer.apply(root, update, cb);
+            if (predicate != null) {
+                update.where(predicate);
+            }
+            final int updatedCount = IrminsulContext.getCurrent().applyQueryTimeout(session.createQuery(update))
+                    .executeUpdate();
+            invalidateCachedOnCommit();
+            return updatedCount;
         });
     }
 
@@ -88,7 +432,7 @@ public interface RepositoryExtension<TEntity> {
      * @return the sum of the field
      */
     default double sumByCriteria(TriFunction<Root<TEntity>, CriteriaQuery<Long>, CriteriaBuilder, Predicate> criteriaBuilderConsumer, String fieldName) {
-        return getDatabaseService().runInThreadTransaction(session -> {
+        return getDatabaseService().runInReadOnlyTransaction(session -> {
             var cb = session.getCriteriaBuilder();
             var query = cb.createQuery(Long.class);
             var root = query.from(getEntityClass());
@@ -97,7 +441,9 @@ public interface RepositoryExtension<TEntity> {
             if (predicate != null) {
                 query.where(predicate);
             }
-            return session.createQuery(query).getSingleResult().doubleValue();
+            return IrminsulContext.getCurrent().applyQueryTimeout(session.createQuery(query))
+                    .getSingleResult()
+                    .doubleValue();
         });
     }
 
@@ -110,7 +456,7 @@ public interface RepositoryExtension<TEntity> {
      * @return the maximum value of the field
      */
     default double maxByCriteria(TriFunction<Root<TEntity>, CriteriaQuery<Long>, CriteriaBuilder, Predicate> criteriaBuilderConsumer, String fieldName) {
-        return getDatabaseService().runInThreadTransaction(session -> {
+        return getDatabaseService().runInReadOnlyTransaction(session -> {
             var cb = session.getCriteriaBuilder();
             var query = cb.createQuery(Long.class);
             var root = query.from(getEntityClass());
@@ -119,7 +465,8 @@ public interface RepositoryExtension<TEntity> {
             if (predicate != null) {
                 query.where(predicate);
             }
-            return Optional.ofNullable(session.createQuery(query).getSingleResult()).map(Long::doubleValue).orElse(0.0);
+            final var max = IrminsulContext.getCurrent().applyQueryTimeout(session.createQuery(query)).getSingleResult();
+            return Optional.ofNullable(max).map(Long::doubleValue).orElse(0.0);
         });
     }
 
@@ -132,7 +479,7 @@ public interface RepositoryExtension<TEntity> {
      * @return the list of long values
      */
     default List<Long> getAllLongValuesByCriteria(TriFunction<Root<TEntity>, CriteriaQuery<Long>, CriteriaBuilder, Predicate> criteriaBuilderConsumer, String fieldName) {
-        return getDatabaseService().runInThreadTransaction(session -> {
+        return getDatabaseService().runInReadOnlyTransaction(session -> {
             var cb = session.getCriteriaBuilder();
             var query = cb.createQuery(Long.class);
             var root = query.from(getEntityClass());
@@ -141,8 +488,108 @@ public interface RepositoryExtension<TEntity> {
             if (predicate != null) {
                 query.where(predicate);
             }
-            return session.createQuery(query).getResultList();
+            return IrminsulContext.getCurrent().applyQueryTimeout(session.createQuery(query)).getResultList();
+        });
+    }
+
+    /**
+     * Finds projections of entities by criteria. Only the given attributes are selected and passed to the constructor of
+     * the projection class, in order, so no entities are loaded into the session:
+     * <pre>{@code
+     * record CompanySummary(Long id, String name) {}
+     *
+     * var summaries = repository.findProjectionsByCriteria(CompanySummary.class, (root, query, cb) -> cb.conjunction(), "id", "name");
+     * }</pre>
+     *
+     * @param projectionClass         the projection class, such as a record, with a constructor matching the attributes
+     * @param criteriaBuilderConsumer the criteria builder consumer
+     * @param attributes              the names of the attributes to select
+     * @param <R>                     the projection type
+     *
+     * @return the list of projections
+     */
+    default <R> List<R> findProjectionsByCriteria(Class<R> projectionClass, TriFunction<Root<TEntity>, CriteriaQuery<R>, CriteriaBuilder, Predicate> criteriaBuilderConsumer, String... attributes) {
+        if (attributes.length == 0) {
+            throw new IllegalArgumentException("At least one attribute must be selected");
+        }
+
+        return getDatabaseService().runInReadOnlyTransaction(session -> {
+            var cb = session.getCriteriaBuilder();
+            var query = cb.createQuery(projectionClass);
+            var root = query.from(getEntityClass());
+            query.select(cb.construct(projectionClass, selectAttributes(root, attributes)));
+            var predicate = criteriaBuilderConsumer.apply(root, query, cb);
+            if (predicate != null) {
+                query.where(predicate);
+            }
+            return IrminsulContext.getCurrent().applyQueryTimeout(session.createQuery(query)).getResultList();
         });
     }
 
+    /**
+     * Finds tuples of attributes of entities by criteria. Only the given attributes are selected, aliased by their
+     * names, so the values may be read with {@link Tuple#get(String, Class)}. No entities are loaded into the session.
+     *
+     * @param criteriaBuilderConsumer the criteria builder consumer
+     * @param attributes              the names of the attributes to select
+     *
+     * @return the list of tuples
+     */
+    default List<Tuple> findTuplesByCriteria(TriFunction<Root<TEntity>, CriteriaQuery<Tuple>, CriteriaBuilder, Predicate> criteriaBuilderConsumer, String... attributes) {
+        if (attributes.length == 0) {
+            throw new IllegalArgumentException("At least one attribute must be selected");
+        }
+
+        return getDatabaseService().runInReadOnlyTransaction(session -> {
+            var cb = session.getCriteriaBuilder();
+            var query = cb.createTupleQuery();
+            var root = query.from(getEntityClass());
+            query.select(cb.tuple(selectAttributes(root, attributes)));
+            var predicate = criteriaBuilderConsumer.apply(root, query, cb);
+            if (predicate != null) {
+                query.where(predicate);
+            }
+            return IrminsulContext.getCurrent().applyQueryTimeout(session.createQuery(query)).getResultList();
+        });
+    }
+
+    /**
+     * Creates the selections of the attributes, aliased by their names.
+     *
+     * @param root       the root of the query
+     * @param attributes the names of the attributes
+     *
+     * @return the selections
+     */
+    private Selection<?>[] selectAttributes(Root<TEntity> root, String... attributes) {
+        final var selections = new Selection<?>[attributes.length];
+        for (int i = 0; i < attributes.length; i++) {
+            selections[i] = root.get(attributes[i]).alias(attributes[i]);
+        }
+        return selections;
+    }
+
+    /**
+     * Invalidates all entities cached by the repository once the current transaction commits, if the repository is a
+     * {@link BaseRepository}.
+     */
+    private void invalidateCachedOnCommit() {
+        if (this instanceof BaseRepository<?, ?> repository) {
+            repository.invalidateAllCachedOnCommit();
+        }
+    }
+
+    /**
+     * Checks if the type is an integral numeric type, which may be split into ID ranges.
+     *
+     * @param type the type to check
+     *
+     * @return true if the type is integral, false otherwise
+     */
+    private static boolean isIntegralType(Class<?> type) {
+        // Compared one by one, as a constant set would be public API of the interface
+        return type == Long.class || type == long.class || type == Integer.class || type == int.class
+                || type == Short.class || type == short.class || type == Byte.class || type == byte.class
+                || type == BigInteger.class;
+    }
 }
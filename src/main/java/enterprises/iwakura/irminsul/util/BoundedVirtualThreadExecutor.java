@@ -0,0 +1,117 @@
+package enterprises.iwakura.irminsul.util;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executor running each task on its own virtual thread, while capping the number of concurrently running tasks with
+ * a semaphore. Tasks over the cap wait on the semaphore, which parks the virtual thread without blocking its carrier
+ * thread. Virtual threads are available since Java 21, so they are looked up reflectively; use
+ * {@link #isSupported()} to check if the current Java runtime supports them.
+ */
+public final class BoundedVirtualThreadExecutor extends AbstractExecutorService {
+
+    private final ExecutorService delegate;
+    private final Semaphore admissionPermits;
+    private final Semaphore runningPermits;
+
+    private BoundedVirtualThreadExecutor(ExecutorService delegate, int maxRunning, int maxWaiting) {
+        this.delegate = delegate;
+        this.admissionPermits = new Semaphore(maxRunning + maxWaiting);
+        this.runningPermits = new Semaphore(maxRunning);
+    }
+
+    /**
+     * Checks if the current Java runtime supports virtual threads.
+     *
+     * @return true if virtual threads are supported, false otherwise
+     */
+    public static boolean isSupported() {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        } catch (NoSuchMethodException exception) {
+            return false;
+        }
+    }
+
+    /**
+     * Creates a new executor running tasks on virtual threads.
+     *
+     * @param threadNamePrefix the name prefix of the virtual threads
+     * @param maxRunning       the maximum number of concurrently running tasks
+     * @param maxWaiting       the maximum number of tasks waiting for a free permit
+     *
+     * @return the created executor
+     *
+     * @throws UnsupportedOperationException if the current Java runtime does not support virtual threads
+     */
+    public static BoundedVirtualThreadExecutor create(String threadNamePrefix, int maxRunning, int maxWaiting) {
+        try {
+            final var builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, threadNamePrefix, 1L);
+            final var threadFactory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            final var executor = (ExecutorService) Executors.class
+                .getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                .invoke(null, threadFactory);
+            return new BoundedVirtualThreadExecutor(executor, maxRunning, maxWaiting);
+        } catch (ReflectiveOperationException exception) {
+            throw new UnsupportedOperationException("Virtual threads are not supported by the current Java runtime",
+                exception);
+        }
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (!admissionPermits.tryAcquire()) {
+            throw new RejectedExecutionException("Too many tasks are waiting for execution");
+        }
+        try {
+            delegate.execute(() -> {
+                // Parks only the virtual thread; uninterruptibly, so every accepted task is run
+                runningPermits.acquireUninterruptibly();
+                try {
+                    command.run();
+                } finally {
+                    runningPermits.release();
+                    admissionPermits.release();
+                }
+            });
+        } catch (RejectedExecutionException exception) {
+            admissionPermits.release();
+            throw exception;
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        return delegate.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+}
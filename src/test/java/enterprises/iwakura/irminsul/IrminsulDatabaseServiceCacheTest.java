@@ -0,0 +1,202 @@
+package enterprises.iwakura.irminsul;
+
+import enterprises.iwakura.irminsul.cache.CacheRegionConfiguration;
+import enterprises.iwakura.irminsul.cache.EntityCache;
+import enterprises.iwakura.irminsul.cache.NegativeLookupCache;
+import enterprises.iwakura.irminsul.entity.Company;
+import enterprises.iwakura.irminsul.entity.Employee;
+import enterprises.iwakura.irminsul.repository.CompanyRepository;
+
+import org.hibernate.Session;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.function.Consumer;
+
+public class IrminsulDatabaseServiceCacheTest extends DatabaseTest {
+
+    @Test
+    public void secondLevelCacheTest() {
+        final var configuration = applyTestcontainersConfig(new DatabaseServiceConfiguration());
+        configuration.setSecondLevelCacheEnabled(true);
+        configuration.setQueryCacheEnabled(true);
+        configuration.setCacheRegions(Map.of(
+                Company.class.getName(), CacheRegionConfiguration.builder()
+                        .maxEntries(100)
+                        .timeToLive(Duration.ofMinutes(5))
+                        .build()
+        ));
+        final var databaseService = new IrminsulDatabaseService(configuration);
+        databaseService.initialize(
+                Company.class,
+                Employee.class
+        );
+
+        final var cache = databaseService.getSessionFactory().getCache();
+        final var companyRepository = new CompanyRepository(databaseService);
+        final var company = companyRepository.save(Company.create("Second Level Cached Company"));
+
+        cache.evictAllRegions();
+        assert !cache.containsEntity(Company.class, company.getId());
+
+        // Entity loaded by ID is put into the second-level cache
+        assert companyRepository.findById(company.getId()).orElseThrow().getName().equals("Second Level Cached Company");
+        assert cache.containsEntity(Company.class, company.getId());
+
+        // Updates are written through the cache
+        company.setName("Updated Second Level Cached Company");
+        companyRepository.save(company);
+        assert companyRepository.findById(company.getId()).orElseThrow().getName().equals("Updated Second Level Cached Company");
+
+        // Cached query results are invalidated by updates of the queried table
+        assert companyRepository.findByCriteria((root, query, cb) -> cb.equal(root.get("name"), "Updated Second Level Cached Company")).size() == 1;
+        companyRepository.save(Company.create("Updated Second Level Cached Company"));
+        assert companyRepository.findByCriteria((root, query, cb) -> cb.equal(root.get("name"), "Updated Second Level Cached Company")).size() == 2;
+
+        databaseService.shutdown();
+    }
+
+    @Test
+    public void findByIdCacheTest() {
+        final var databaseService = new IrminsulDatabaseService(applyTestcontainersConfig(new DatabaseServiceConfiguration()));
+        databaseService.initialize(
+                Company.class,
+                Employee.class
+        );
+
+        final var companyRepository = new CompanyRepository(databaseService);
+        final var cache = new EntityCache<Long, Company>(2, Duration.ofMinutes(5));
+        companyRepository.setFindByIdCache(cache);
+
+        final var companyId = companyRepository.save(Company.create("Cached Company")).getId();
+
+        // Read-through
+        final var loaded = companyRepository.findById(companyId).orElseThrow();
+        final var copy = companyRepository.findById(companyId).orElseThrow();
+        assert cache.getHitCount() == 1 : "Expected 1 hit, found: " + cache.getHitCount();
+        assert cache.getMissCount() == 1 : "Expected 1 miss, found: " + cache.getMissCount();
+
+        // Each caller gets its own copy, unsaved changes are not seen by others
+        assert copy != loaded;
+        assert copy.getId().equals(companyId);
+        copy.setName("Unsaved Company");
+        assert companyRepository.findById(companyId).orElseThrow().getName().equals("Cached Company");
+        assert loaded.getName().equals("Cached Company");
+
+        // Bypassed within transaction
+        databaseService.runInThreadTransaction(session -> {
+            final var managed = companyRepository.findById(companyId).orElseThrow();
+            assert managed != loaded;
+            assert session.contains(managed);
+        });
+
+        // Invalidated after commit of an update
+        loaded.setName("Updated Cached Company");
+        companyRepository.save(loaded);
+        assert cache.size() == 0;
+        assert companyRepository.findById(companyId).orElseThrow().getName().equals("Updated Cached Company");
+
+        // Evicted once written, so an update which is rolled back does not leave a stale entity cached
+        final var cached = companyRepository.findById(companyId).orElseThrow();
+        assert cache.size() == 1;
+        try {
+            databaseService.runInThreadTransaction((Consumer<Session>) session -> {
+                cached.setName("Rolled Back Company");
+                companyRepository.save(cached);
+                throw new RuntimeException("Simulated exception to trigger rollback");
+            });
+            assert false : "Expected transaction to be rolled back";
+        } catch (RuntimeException exception) {
+            // Expected exception, do nothing
+        }
+        assert cache.size() == 0;
+        assert companyRepository.findById(companyId).orElseThrow().getName().equals("Updated Cached Company");
+
+        // Loads started before an invalidation are not cached
+        final long stamp = cache.getStamp(companyId);
+        cache.invalidate(companyId);
+        assert !cache.put(companyId, loaded, stamp);
+
+        // Bounded by size
+        companyRepository.findById(companyId);
+        companyRepository.findById(companyRepository.save(Company.create("Second Cached Company")).getId());
+        companyRepository.findById(companyRepository.save(Company.create("Third Cached Company")).getId());
+        assert cache.size() == 2 : "Expected 2 cached companies, found: " + cache.size();
+        assert cache.getEvictionCount() == 1 : "Expected 1 eviction, found: " + cache.getEvictionCount();
+
+        // Invalidated after delete
+        companyRepository.deleteById(companyId);
+        assert companyRepository.findById(companyId).isEmpty();
+
+        databaseService.shutdown();
+    }
+
+    @Test
+    public void negativeLookupCacheTest() throws InterruptedException {
+        final var databaseService = new IrminsulDatabaseService(applyTestcontainersConfig(new DatabaseServiceConfiguration()));
+        databaseService.initialize(
+                Company.class,
+                Employee.class
+        );
+
+        final var companyRepository = new CompanyRepository(databaseService);
+        final var cache = new NegativeLookupCache<Long>(100, Duration.ofMinutes(5));
+        companyRepository.setNegativeLookupCache(cache);
+
+        // The sequence allocates IDs one by one, so the next company gets the following ID
+        final var existingId = companyRepository.save(Company.create("Existing Company")).getId();
+        final var missingId = existingId + 1;
+
+        // Found IDs are not cached
+        assert companyRepository.existsById(existingId);
+        assert companyRepository.findById(existingId).isPresent();
+        assert cache.size() == 0;
+
+        // Misses are cached and shared by findById and existsById
+        assert !companyRepository.existsById(missingId);
+        assert cache.isKnownMissing(missingId);
+        assert companyRepository.findById(missingId).isEmpty();
+        assert !companyRepository.existsById(missingId);
+        assert cache.size() == 1;
+        assert cache.getHitCount() >= 2 : "Expected at least 2 hits, found: " + cache.getHitCount();
+
+        // Invalidated after commit of an insert with the missed ID
+        final var inserted = companyRepository.insert(Company.create("Inserted Company"));
+        assert inserted.getId().equals(missingId);
+        assert !cache.isKnownMissing(missingId);
+        assert companyRepository.existsById(missingId);
+        assert companyRepository.findById(missingId).isPresent();
+
+        // Bypassed within transaction
+        final var nextMissingId = missingId + 1;
+        companyRepository.findById(nextMissingId);
+        assert cache.isKnownMissing(nextMissingId);
+        databaseService.runInThreadTransaction(session -> {
+            session.createNativeMutationQuery("INSERT INTO company (id, name) VALUES (:id, 'Native Company')")
+                    .setParameter("id", nextMissingId)
+                    .executeUpdate();
+            assert companyRepository.existsById(nextMissingId);
+            assert companyRepository.findById(nextMissingId).isPresent();
+        });
+
+        // Misses expire after their time to live
+        final var expiringCache = new NegativeLookupCache<Long>(100, Duration.ofMillis(50));
+        companyRepository.setNegativeLookupCache(expiringCache);
+        final var expiringId = nextMissingId + 1_000;
+        assert !companyRepository.existsById(expiringId);
+        assert expiringCache.isKnownMissing(expiringId);
+        Thread.sleep(100);
+        assert !expiringCache.isKnownMissing(expiringId);
+
+        // Time to live is required
+        try {
+            new NegativeLookupCache<Long>(100, null);
+            assert false : "Expected missing time to live to be rejected";
+        } catch (IllegalArgumentException exception) {
+            // Expected exception, do nothing
+        }
+
+        databaseService.shutdown();
+    }
+}
@@ -0,0 +1,689 @@
+package enterprises.iwakura.irminsul;
+
+import enterprises.iwakura.irminsul.cache.EntityCache;
+import enterprises.iwakura.irminsul.entity.Company;
+import enterprises.iwakura.irminsul.entity.Employee;
+import enterprises.iwakura.irminsul.metrics.HistogramTransactionMetrics;
+import enterprises.iwakura.irminsul.metrics.TransactionPhase;
+import enterprises.iwakura.irminsul.repository.CompanyRepository;
+import enterprises.iwakura.irminsul.repository.GroupCommitWriter;
+import enterprises.iwakura.irminsul.repository.KeysetPage;
+import enterprises.iwakura.irminsul.repository.KeysetSort;
+
+import org.hibernate.Session;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+public class IrminsulDatabaseServiceRepositoryTest extends DatabaseTest {
+
+    public record CompanySummary(Long id, String name) {
+    }
+
+    @Test
+    public void groupCommitTest() {
+        final var databaseService = new IrminsulDatabaseService(applyTestcontainersConfig(new DatabaseServiceConfiguration()));
+        databaseService.initialize(
+                Company.class,
+                Employee.class
+        );
+
+        final var metrics = new HistogramTransactionMetrics();
+        databaseService.setTransactionMetrics(metrics);
+
+        final var companyRepository = new CompanyRepository(databaseService);
+        final var writer = new GroupCommitWriter<>(companyRepository, 50, Duration.ofMillis(50), 1000);
+        final var groupName = writer.getTransactionOptions().getName();
+
+        // Concurrent writers share group commits
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        final var futures = new ArrayList<CompletableFuture<Company>>();
+        for (int i = 0; i < 200; i++) {
+            final int finalIndex = i;
+            futures.add(CompletableFuture.supplyAsync(() -> writer.insert(Company.create("Grouped Company " + finalIndex)), executor)
+                    .thenCompose(future -> future));
+        }
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+        executor.shutdown();
+
+        for (CompletableFuture<Company> future : futures) {
+            assert future.join().getId() != null;
+        }
+        final var groupedCount = companyRepository.findByCriteria((root, query, cb) -> cb.like(root.<String>get("name"), "Grouped Company %")).size();
+        assert groupedCount == 200 : "Expected 200 companies, found: " + groupedCount;
+        final var groupCount = metrics.getSnapshot(groupName, TransactionPhase.COMMIT).getCount();
+        assert groupCount < 200 : "Expected writes to be grouped, but got " + groupCount + " commits";
+
+        // Failing write does not fail the other writes of its group
+        final var validFuture = writer.insert(Company.create("Valid Company"));
+        final var invalidFuture = writer.insert(Company.create(null));
+        final var savedFuture = writer.save(Company.create("Saved Company"));
+
+        assert validFuture.join().getId() != null;
+        assert savedFuture.join().getId() != null;
+        try {
+            invalidFuture.join();
+            assert false : "Expected the invalid write to fail";
+        } catch (CompletionException exception) {
+            // Expected exception, do nothing
+        }
+        assert companyRepository.findById(validFuture.join().getId()).isPresent();
+
+        // Closed writer writes what is enqueued and rejects new writes
+        final var lastFuture = writer.insert(Company.create("Last Company"));
+        writer.close();
+        assert lastFuture.join().getId() != null;
+        try {
+            writer.insert(Company.create("Rejected Company"));
+            assert false : "Expected the closed writer to reject writes";
+        } catch (IllegalStateException exception) {
+            // Expected exception, do nothing
+        }
+
+        databaseService.shutdown();
+    }
+
+    @Test
+    public void batchedBulkOperationsTest() {
+        final var configuration = applyTestcontainersConfig(new DatabaseServiceConfiguration());
+        configuration.setJdbcBatchSize(20);
+        final var databaseService = new IrminsulDatabaseService(configuration);
+        databaseService.initialize(
+                Company.class,
+                Employee.class
+        );
+
+        final var companyRepository = new CompanyRepository(databaseService);
+
+        // Bulk methods in their own transaction flush and clear the session in batches
+        final var companies = createCompanies("Batched Company", 105);
+        companyRepository.insertAll(companies);
+        for (Company company : companies) {
+            assert company.getId() != null;
+        }
+        assert findByNamePrefix(companyRepository, "Batched Company").size() == 105;
+
+        companies.forEach(company -> company.setName("Updated " + company.getName()));
+        final var updatedCompanies = companyRepository.updateAll(companies);
+        assert updatedCompanies.size() == 105;
+        assert findByNamePrefix(companyRepository, "Updated Batched Company").size() == 105;
+
+        companyRepository.deleteAll(updatedCompanies);
+        assert findByNamePrefix(companyRepository, "Updated Batched Company").isEmpty();
+
+        // Joined transaction is flushed, but its entities stay managed
+        databaseService.runInThreadTransaction(session -> {
+            final var joinedCompanies = createCompanies("Joined Batched Company", 45);
+            companyRepository.insertAll(joinedCompanies);
+            for (Company company : joinedCompanies) {
+                assert session.contains(company);
+            }
+        });
+        assert findByNamePrefix(companyRepository, "Joined Batched Company").size() == 45;
+
+        databaseService.shutdown();
+    }
+
+    @Test
+    public void bulkSaveAllTest() {
+        final var configuration = applyTestcontainersConfig(new DatabaseServiceConfiguration());
+        configuration.setJdbcBatchSize(10);
+        final var databaseService = new IrminsulDatabaseService(configuration);
+        databaseService.initialize(
+                Company.class,
+                Employee.class
+        );
+
+        final var companyRepository = new CompanyRepository(databaseService);
+        assert companyRepository.getIdAttributeName().equals("id");
+
+        // Mix of existing and new entities, spanning multiple chunks
+        final var existingCompanies = companyRepository.insertAll(createCompanies("Existing Saved Company", 15));
+        final var toSave = new ArrayList<Company>();
+        for (int i = 0; i < existingCompanies.size(); i++) {
+            final var existingCompany = existingCompanies.get(i);
+            existingCompany.setName("Renamed Saved Company " + i);
+            toSave.add(existingCompany);
+            toSave.add(Company.create("New Saved Company " + i));
+        }
+
+        final var savedCompanies = companyRepository.saveAll(toSave);
+        assert savedCompanies.size() == toSave.size();
+        for (int i = 0; i < savedCompanies.size(); i++) {
+            assert savedCompanies.get(i).getId() != null;
+            assert savedCompanies.get(i).getName().equals(toSave.get(i).getName());
+        }
+        assert savedCompanies.get(0).getId().equals(existingCompanies.get(0).getId());
+        assert findByNamePrefix(companyRepository, "Existing Saved Company").isEmpty();
+        assert findByNamePrefix(companyRepository, "Renamed Saved Company").size() == 15;
+        assert findByNamePrefix(companyRepository, "New Saved Company").size() == 15;
+
+        databaseService.shutdown();
+    }
+
+    private static List<Company> createCompanies(String name, int count) {
+        final var companies = new ArrayList<Company>(count);
+        for (int i = 0; i < count; i++) {
+            companies.add(Company.create(name + " " + i));
+        }
+        return companies;
+    }
+
+    private static List<Company> findByNamePrefix(CompanyRepository companyRepository, String prefix) {
+        return companyRepository.findByCriteria((root, query, cb) -> cb.like(root.<String>get("name"), prefix + " %"));
+    }
+
+    @Test
+    public void streamByCriteriaTest() {
+        final var databaseService = new IrminsulDatabaseService(applyTestcontainersConfig(new DatabaseServiceConfiguration()));
+        databaseService.initialize(
+                Company.class,
+                Employee.class
+        );
+
+        final var companyRepository = new CompanyRepository(databaseService);
+        final var companies = new ArrayList<Company>();
+        for (int i = 0; i < 250; i++) {
+            companies.add(Company.create("Streamed Company " + i));
+        }
+        companyRepository.insertAll(companies);
+
+        // Own session, cleared every 40 rows, not bound to the current thread
+        final var streamedIds = new HashSet<Long>();
+        try (var stream = companyRepository.streamByCriteria((root, query, cb) -> cb.like(root.<String>get("name"), "Streamed Company %"), 40)) {
+            stream.forEach(company -> {
+                assert !IrminsulContext.hasCurrent();
+                streamedIds.add(company.getId());
+            });
+        }
+        assert streamedIds.size() == 250 : "Expected 250 streamed companies, found: " + streamedIds.size();
+
+        // Other transactions may run while the stream is open
+        try (var stream = companyRepository.streamAll()) {
+            final var iterator = stream.iterator();
+            assert iterator.hasNext();
+            companyRepository.save(Company.create("Saved While Streaming"));
+            iterator.next();
+        }
+
+        // Joined transaction streams within its session, without clearing it
+        databaseService.runInThreadTransaction(session -> {
+            try (var stream = companyRepository.streamByCriteria((root, query, cb) -> cb.like(root.<String>get("name"), "Streamed Company %"), 40)) {
+                assert stream.filter(session::contains).count() == 250;
+            }
+        });
+
+        databaseService.shutdown();
+    }
+
+    @Test
+    public void keysetPaginationTest() {
+        final var databaseService = new IrminsulDatabaseService(applyTestcontainersConfig(new DatabaseServiceConfiguration()));
+        databaseService.initialize(
+                Company.class,
+                Employee.class
+        );
+
+        final var companyRepository = new CompanyRepository(databaseService);
+
+        // Duplicate names, so the ID tiebreaker is needed for a stable order
+        final var companies = new ArrayList<Company>();
+        for (int i = 0; i < 53; i++) {
+            companies.add(Company.create("Keyset Company " + (i % 7)));
+        }
+        companyRepository.insertAll(companies);
+
+        final var expected = new ArrayList<>(companies);
+        expected.sort(Comparator.comparing(Company::getName, Comparator.reverseOrder()).thenComparing(Company::getId));
+
+        final var sort = KeysetSort.descending("name");
+        final var paged = new ArrayList<Long>();
+        String token = null;
+        int pageCount = 0;
+        do {
+            final KeysetPage<Company> page = companyRepository.findByCriteriaKeyset(sort, 10, token,
+                    (root, query, cb) -> cb.like(root.<String>get("name"), "Keyset Company %"));
+            page.getContent().forEach(company -> paged.add(company.getId()));
+            token = page.getNextToken();
+            pageCount++;
+        } while (token != null);
+
+        assert pageCount == 6 : "Expected 6 pages, found: " + pageCount;
+        assert paged.equals(expected.stream().map(Company::getId).toList());
+
+        // Last page fits exactly
+        final var lastPage = companyRepository.findByCriteriaKeyset(KeysetSort.BY_ID, 53, null,
+                (root, query, cb) -> cb.like(root.<String>get("name"), "Keyset Company %"));
+        assert lastPage.getContent().size() == 53;
+        assert !lastPage.hasNext();
+
+        // Token of a different sort is rejected
+        final var firstPage = companyRepository.findByCriteriaKeyset(sort, 10, null, (root, query, cb) -> cb.conjunction());
+        assert firstPage.hasNext();
+        try {
+            companyRepository.findByCriteriaKeyset(KeysetSort.BY_ID, 10, firstPage.getNextToken(), (root, query, cb) -> cb.conjunction());
+            assert false : "Expected token of a different sort to be rejected";
+        } catch (IllegalArgumentException exception) {
+            // Expected exception, do nothing
+        }
+        try {
+            companyRepository.findByCriteriaKeyset(sort, 10, "not a token", (root, query, cb) -> cb.conjunction());
+            assert false : "Expected malformed token to be rejected";
+        } catch (IllegalArgumentException exception) {
+            // Expected exception, do nothing
+        }
+
+        databaseService.shutdown();
+    }
+
+    @Test
+    public void groupCommitRetryTest() {
+        final var config = applyTestcontainersConfig(new DatabaseServiceConfiguration());
+        config.setRetryPolicy(TransactionRetryPolicy.builder()
+                .maxAttempts(3)
+                .initialBackoff(Duration.ofMillis(1))
+                .build());
+        final var databaseService = new IrminsulDatabaseService(config);
+        databaseService.initialize(
+                Company.class,
+                Employee.class
+        );
+
+        // Fails the first group transaction after the entity got its generated ID
+        final var failures = new AtomicInteger(1);
+        final var companyRepository = new CompanyRepository(databaseService) {
+            @Override
+            public Company insert(Company entity) {
+                final var inserted = super.insert(entity);
+                if (failures.getAndDecrement() > 0) {
+                    throw new RuntimeException(new SQLException("Simulated serialization failure", "40001"));
+                }
+                return inserted;
+            }
+        };
+        final var writer = new GroupCommitWriter<>(companyRepository);
+
+        // Retried group transaction inserts the entity again instead of failing on its stale ID
+        final var company = writer.insert(Company.create("Retried Grouped Company")).join();
+        writer.close();
+
+        assert databaseService.getTransactionRetryCount() == 1;
+        assert companyRepository.findById(company.getId()).isPresent();
+        assert companyRepository.findByCriteria((root, query, cb) -> cb.equal(root.get("name"), "Retried Grouped Company")).size() == 1;
+
+        databaseService.shutdown();
+    }
+
+    @Test
+    public void partitionedReadTest() {
+        final var databaseService = new IrminsulDatabaseService(applyTestcontainersConfig(new DatabaseServiceConfiguration()));
+        databaseService.initialize(
+                Company.class,
+                Employee.class
+        );
+
+        final var companyRepository = new CompanyRepository(databaseService);
+        final var companies = new ArrayList<Company>();
+        for (int i = 0; i < 150; i++) {
+            companies.add(Company.create("Partitioned Company " + i));
+        }
+        companyRepository.insertAll(companies);
+
+        final Set<Long> readIds = ConcurrentHashMap.newKeySet();
+        final Set<String> threadNames = ConcurrentHashMap.newKeySet();
+        final long count = companyRepository.forEachByCriteriaPartitioned(4,
+                (root, query, cb) -> cb.like(root.<String>get("name"), "Partitioned Company %"),
+                company -> {
+                    readIds.add(company.getId());
+                    threadNames.add(Thread.currentThread().getName());
+                }).join();
+
+        assert count == 150 : "Expected 150 companies, found: " + count;
+        assert readIds.size() == 150;
+        assert threadNames.stream().allMatch(name -> name.startsWith("irminsul-async-"));
+
+        // Failure of the consumer stops the other partitions
+        final var failed = new AtomicBoolean();
+        final var accepted = new AtomicInteger();
+        try {
+            companyRepository.forEachByCriteriaPartitioned(4,
+                    (root, query, cb) -> cb.like(root.<String>get("name"), "Partitioned Company %"),
+                    company -> {
+                        if (failed.compareAndSet(false, true)) {
+                            throw new IllegalStateException("Simulated consumer failure");
+                        }
+                        accepted.incrementAndGet();
+                        try {
+                            Thread.sleep(10);
+                        } catch (InterruptedException exception) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }).join();
+            assert false : "Expected the partitioned read to fail";
+        } catch (CompletionException exception) {
+            assert exception.getCause() instanceof IllegalStateException;
+        }
+        assert accepted.get() < 50 : "Expected the other partitions to stop, accepted: " + accepted.get();
+
+        // No matching entities
+        assert companyRepository.forEachByCriteriaPartitioned(4,
+                (root, query, cb) -> cb.equal(root.get("name"), "Nonexistent Company"),
+                company -> {
+                }).join() == 0;
+
+        try {
+            companyRepository.forEachByCriteriaPartitioned(0, (root, query, cb) -> cb.conjunction(), company -> {
+            });
+            assert false : "Expected invalid partition count to be rejected";
+        } catch (IllegalArgumentException exception) {
+            // Expected exception, do nothing
+        }
+
+        databaseService.shutdown();
+    }
+
+    @Test
+    public void existsTest() {
+        final var databaseService = new IrminsulDatabaseService(applyTestcontainersConfig(new DatabaseServiceConfiguration()));
+        databaseService.initialize(
+                Company.class,
+                Employee.class
+        );
+
+        final var companyRepository = new CompanyRepository(databaseService);
+        final var companyId = companyRepository.save(Company.create("Existing Company")).getId();
+        companyRepository.save(Company.create("Existing Company"));
+
+        // By ID
+        assert companyRepository.existsById(companyId);
+        assert !companyRepository.existsById(companyId + 1_000);
+
+        // By criteria, with multiple matches
+        assert companyRepository.existsByCriteria((root, query, cb) -> cb.equal(root.get("name"), "Existing Company"));
+        assert !companyRepository.existsByCriteria((root, query, cb) -> cb.equal(root.get("name"), "Missing Company"));
+
+        // Joins the current transaction
+        databaseService.runInThreadTransaction(session -> {
+            companyRepository.save(Company.create("Uncommitted Existing Company"));
+            assert companyRepository.existsByCriteria((root, query, cb) -> cb.equal(root.get("name"), "Uncommitted Existing Company"));
+        });
+
+        databaseService.shutdown();
+    }
+
+    @Test
+    public void preparedCriteriaTest() {
+        final var databaseService = new IrminsulDatabaseService(applyTestcontainersConfig(new DatabaseServiceConfiguration()));
+        databaseService.initialize(
+                Company.class,
+                Employee.class
+        );
+
+        final var companyRepository = new CompanyRepository(databaseService);
+        final var companies = new ArrayList<Company>();
+        for (int i = 0; i < 10; i++) {
+            companies.add(Company.create(i < 6 ? "Prepared Company" : "Other Prepared Company"));
+        }
+        companyRepository.insertAll(companies);
+
+        final var buildCount = new AtomicInteger();
+        final var byName = companyRepository.prepareCriteria((root, query, cb) -> {
+            buildCount.incrementAndGet();
+            return cb.equal(root.get("name"), cb.parameter(String.class, "name"));
+        });
+
+        // Parameters are bound on each call
+        assert companyRepository.findByPreparedCriteria(byName, Map.of("name", "Prepared Company")).size() == 6;
+        assert companyRepository.findByPreparedCriteria(byName, Map.of("name", "Other Prepared Company")).size() == 4;
+        assert companyRepository.findByPreparedCriteria(byName, Map.of("name", "Missing Company")).isEmpty();
+        assert companyRepository.countByPreparedCriteria(byName, Map.of("name", "Prepared Company")) == 6;
+        assert companyRepository.countByPreparedCriteria(byName, Map.of("name", "Missing Company")) == 0;
+
+        // Paged
+        assert companyRepository.findByPreparedCriteriaPaged(byName, Map.of("name", "Prepared Company"), 0, 4).size() == 4;
+        assert companyRepository.findByPreparedCriteriaPaged(byName, Map.of("name", "Prepared Company"), 1, 4).size() == 2;
+
+        // The criteria are built once for the select and once for the count query
+        assert buildCount.get() == 2 : "Expected criteria to be built twice, built: " + buildCount.get();
+
+        // Shared by concurrent transactions, each binding its own parameter values
+        final var preparedExecutor = Executors.newFixedThreadPool(8);
+        final var preparedFutures = new ArrayList<CompletableFuture<Boolean>>();
+        for (int i = 0; i < 64; i++) {
+            final var name = i % 2 == 0 ? "Prepared Company" : "Other Prepared Company";
+            final var expectedCount = i % 2 == 0 ? 6 : 4;
+            preparedFutures.add(CompletableFuture.supplyAsync(() -> {
+                return companyRepository.findByPreparedCriteria(byName, Map.of("name", name)).size() == expectedCount
+                        && companyRepository.countByPreparedCriteria(byName, Map.of("name", name)) == expectedCount;
+            }, preparedExecutor));
+        }
+        for (var future : preparedFutures) {
+            assert future.join();
+        }
+        preparedExecutor.shutdown();
+        assert buildCount.get() == 2 : "Expected criteria not to be built again, built: " + buildCount.get();
+
+        // Joins the current transaction
+        databaseService.runInThreadTransaction(session -> {
+            companyRepository.save(Company.create("Uncommitted Prepared Company"));
+            assert companyRepository.findByPreparedCriteria(byName, Map.of("name", "Uncommitted Prepared Company")).size() == 1;
+        });
+
+        databaseService.shutdown();
+    }
+
+    @Test
+    public void updateAndDeleteByCriteriaTest() {
+        final var databaseService = new IrminsulDatabaseService(applyTestcontainersConfig(new DatabaseServiceConfiguration()));
+        databaseService.initialize(
+                Company.class,
+                Employee.class
+        );
+
+        final var companyRepository = new CompanyRepository(databaseService);
+        final var cache = new EntityCache<Long, Company>(100, null);
+        companyRepository.setFindByIdCache(cache);
+
+        final var companies = new ArrayList<Company>();
+        for (int i = 0; i < 10; i++) {
+            companies.add(Company.create(i < 7 ? "Retained Company" : "Expired Company"));
+        }
+        final var expiredId = companyRepository.insertAll(companies).get(9).getId();
+        companyRepository.findById(expiredId);
+        assert cache.size() == 1;
+
+        // Update
+        final int updatedCount = companyRepository.updateByCriteria((root, update, cb) -> {
+            update.set("name", "Archived Company");
+            return cb.equal(root.get("name"), "Expired Company");
+        });
+        assert updatedCount == 3 : "Expected 3 updated companies, found: " + updatedCount;
+        assert cache.size() == 0;
+        assert companyRepository.findById(expiredId).orElseThrow().getName().equals("Archived Company");
+
+        // Rolled back delete does not invalidate the cache
+        try {
+            databaseService.runInThreadTransaction((Consumer<Session>) session -> {
+                assert companyRepository.deleteByCriteria((root, delete, cb) -> cb.equal(root.get("name"), "Archived Company")) == 3;
+                throw new RuntimeException("Simulated exception to trigger rollback");
+            });
+            assert false : "Expected transaction to be rolled back";
+        } catch (RuntimeException exception) {
+            // Expected exception, do nothing
+        }
+        assert cache.size() == 1;
+        assert companyRepository.countByCriteria((root, query, cb) -> cb.equal(root.get("name"), "Archived Company")) == 3;
+
+        // Delete
+        final int deletedCount = companyRepository.deleteByCriteria((root, delete, cb) -> cb.equal(root.get("name"), "Archived Company"));
+        assert deletedCount == 3 : "Expected 3 deleted companies, found: " + deletedCount;
+        assert cache.size() == 0;
+        assert companyRepository.findById(expiredId).isEmpty();
+        assert companyRepository.countByCriteria((root, query, cb) -> cb.equal(root.get("name"), "Retained Company")) == 7;
+
+        // No matches
+        assert companyRepository.deleteByCriteria((root, delete, cb) -> cb.equal(root.get("name"), "Missing Company")) == 0;
+
+        databaseService.shutdown();
+    }
+
+    @Test
+    public void deleteAllByIdTest() {
+        final var databaseService = new IrminsulDatabaseService(applyTestcontainersConfig(new DatabaseServiceConfiguration()));
+        databaseService.initialize(
+                Company.class,
+                Employee.class
+        );
+
+        final var companyRepository = new CompanyRepository(databaseService);
+        final var cache = new EntityCache<Long, Company>(100, null);
+        companyRepository.setFindByIdCache(cache);
+
+        final var companies = new ArrayList<Company>();
+        for (int i = 0; i < 20_000; i++) {
+            companies.add(Company.create("Deleted Company"));
+        }
+        final var ids = new ArrayList<Long>();
+        for (Company company : companyRepository.insertAll(companies)) {
+            ids.add(company.getId());
+        }
+        final var retainedId = companyRepository.save(Company.create("Not Deleted Company")).getId();
+
+        // A chunk padded to a power of two, with a duplicate and a missing ID
+        assert companyRepository.deleteAllById(List.of(ids.get(0), ids.get(1), ids.get(1), ids.get(2), retainedId + 1)) == 3;
+        assert companyRepository.findById(ids.get(0)).isEmpty();
+
+        // Cached entities are invalidated
+        companyRepository.findById(ids.get(3));
+        assert cache.size() == 1;
+
+        // More IDs than fit into a single IN list
+        final var remainingIds = ids.subList(3, ids.size());
+        assert remainingIds.size() > 16_384;
+        assert companyRepository.deleteAllById(remainingIds) == remainingIds.size();
+        assert cache.size() == 0;
+        assert companyRepository.countByCriteria((root, query, cb) -> cb.equal(root.get("name"), "Deleted Company")) == 0;
+        assert companyRepository.existsById(retainedId);
+
+        assert companyRepository.deleteAllById(List.of()) == 0;
+
+        databaseService.shutdown();
+    }
+
+    @Test
+    public void findAllByIdTest() {
+        final var config = applyTestcontainersConfig(new DatabaseServiceConfiguration());
+        config.setMultiLoadBatchSize(4);
+        final var databaseService = new IrminsulDatabaseService(config);
+        databaseService.initialize(
+                Company.class,
+                Employee.class
+        );
+
+        final var companyRepository = new CompanyRepository(databaseService);
+        final var companies = new ArrayList<Company>();
+        for (int i = 0; i < 10; i++) {
+            companies.add(Company.create("Loaded Company " + i));
+        }
+        final var ids = new ArrayList<Long>();
+        for (Company company : companyRepository.insertAll(companies)) {
+            ids.add(company.getId());
+        }
+        final var missingId = ids.get(ids.size() - 1) + 1_000;
+
+        // In the order of the IDs, across multiple batches
+        final var reversedIds = new ArrayList<>(ids);
+        Collections.reverse(reversedIds);
+        final var found = companyRepository.findAllById(reversedIds);
+        assert found.size() == 10 : "Expected 10 companies, found: " + found.size();
+        for (int i = 0; i < found.size(); i++) {
+            assert reversedIds.get(i).equals(found.get(i).getId());
+        }
+
+        // Missing IDs are skipped or returned as null
+        final var withMissing = Arrays.asList(ids.get(1), missingId, ids.get(0));
+        final var skipped = companyRepository.findAllById(withMissing);
+        assert skipped.stream().map(Company::getId).toList().equals(List.of(ids.get(1), ids.get(0)));
+        final var withNull = companyRepository.findAllById(withMissing, true);
+        assert withNull.size() == 3;
+        assert ids.get(1).equals(withNull.get(0).getId());
+        assert withNull.get(1) == null;
+        assert ids.get(0).equals(withNull.get(2).getId());
+
+        // Entities already in the session are returned as they are
+        databaseService.runInThreadTransaction(session -> {
+            final var managed = companyRepository.findById(ids.get(0)).orElseThrow();
+            managed.setName("Modified Company");
+            final var loaded = companyRepository.findAllById(List.of(ids.get(0), ids.get(1)));
+            assert loaded.get(0) == managed;
+            assert loaded.get(0).getName().equals("Modified Company");
+            assert session.contains(loaded.get(1));
+        });
+
+        assert companyRepository.findAllById(List.of()).isEmpty();
+
+        databaseService.shutdown();
+    }
+
+    @Test
+    public void projectionTest() {
+        final var databaseService = new IrminsulDatabaseService(applyTestcontainersConfig(new DatabaseServiceConfiguration()));
+        databaseService.initialize(
+                Company.class,
+                Employee.class
+        );
+
+        final var companyRepository = new CompanyRepository(databaseService);
+        final var companies = new ArrayList<Company>();
+        for (int i = 0; i < 5; i++) {
+            companies.add(Company.create("Projected Company " + i));
+        }
+        final var firstId = companyRepository.insertAll(companies).get(0).getId();
+
+        // Records
+        final var summaries = companyRepository.findProjectionsByCriteria(CompanySummary.class, (root, query, cb) -> {
+            query.orderBy(cb.asc(root.get("id")));
+            return cb.like(root.<String>get("name"), "Projected Company %");
+        }, "id", "name");
+        assert summaries.size() == 5 : "Expected 5 summaries, found: " + summaries.size();
+        assert summaries.get(0).equals(new CompanySummary(firstId, "Projected Company 0"));
+
+        // Tuples
+        final var tuples = companyRepository.findTuplesByCriteria((root, query, cb) -> cb.equal(root.get("id"), firstId), "name", "createdAt");
+        assert tuples.size() == 1;
+        assert tuples.get(0).get("name", String.class).equals("Projected Company 0");
+        assert tuples.get(0).getElements().size() == 2;
+
+        // Projections are not managed by the session
+        databaseService.runInThreadTransaction(session -> {
+            companyRepository.findProjectionsByCriteria(CompanySummary.class, (root, query, cb) -> cb.conjunction(), "id", "name");
+            assert !session.contains(Company.class.getName(), firstId);
+        });
+
+        try {
+            companyRepository.findTuplesByCriteria((root, query, cb) -> cb.conjunction());
+            assert false : "Expected missing attributes to be rejected";
+        } catch (IllegalArgumentException exception) {
+            // Expected exception, do nothing
+        }
+
+        databaseService.shutdown();
+    }
+}
@@ -0,0 +1,513 @@
+package enterprises.iwakura.irminsul;
+
+import enterprises.iwakura.irminsul.entity.Company;
+import enterprises.iwakura.irminsul.entity.Employee;
+import enterprises.iwakura.irminsul.exception.TransactionException;
+import enterprises.iwakura.irminsul.exception.TransactionTimeoutException;
+import enterprises.iwakura.irminsul.metrics.HistogramTransactionMetrics;
+import enterprises.iwakura.irminsul.metrics.TransactionPhase;
+import enterprises.iwakura.irminsul.repository.CompanyRepository;
+
+import org.hibernate.Session;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+public class IrminsulDatabaseServiceTransactionTest extends DatabaseTest {
+
+    @Test
+    public void readOnlyTransactionTest() {
+        final var databaseService = new IrminsulDatabaseService(applyTestcontainersConfig(new DatabaseServiceConfiguration()));
+        databaseService.initialize(
+                Company.class,
+                Employee.class
+        );
+
+        final var companyRepository = new CompanyRepository(databaseService);
+        final var companyId = companyRepository.save(Company.create("Read-only Company")).getId();
+
+        // Changes to entities loaded in read-only transaction are not flushed
+        databaseService.runInReadOnlyTransaction(session -> {
+            assert IrminsulContext.getCurrent().isReadOnly();
+            final var company = companyRepository.findById(companyId).orElseThrow();
+            assert session.isReadOnly(company);
+            company.setName("Modified Company");
+        });
+
+        assert companyRepository.findById(companyId).orElseThrow().getName().equals("Read-only Company");
+
+        // Writes within read-only transaction fail fast
+        try {
+            databaseService.runInReadOnlyTransaction(session -> {
+                companyRepository.save(Company.create("Should not be saved"));
+            });
+            assert false : "Expected write within read-only transaction to fail";
+        } catch (TransactionException exception) {
+            assert exception.getCause() instanceof IllegalStateException;
+        }
+
+        // Writes directly through the session are rejected as well, instead of being dropped
+        final var persisted = Company.create("Should not be persisted");
+        try {
+            databaseService.runInReadOnlyTransaction(session -> {
+                session.persist(persisted);
+            });
+            assert false : "Expected persist within read-only transaction to fail";
+        } catch (TransactionException exception) {
+            assert exception.getCause() instanceof IllegalStateException;
+        }
+        assert persisted.getId() == null;
+        try {
+            databaseService.runInReadOnlyTransaction(session -> {
+                final var company = companyRepository.findById(companyId).orElseThrow();
+                session.remove(company);
+            });
+            assert false : "Expected remove within read-only transaction to fail";
+        } catch (TransactionException exception) {
+            assert exception.getCause() instanceof IllegalStateException;
+        }
+        assert companyRepository.existsById(companyId);
+
+        // Read-only transaction joins the existing read-write transaction
+        databaseService.runInThreadTransaction(session -> {
+            final var company = companyRepository.findById(companyId).orElseThrow();
+            assert !IrminsulContext.getCurrent().isReadOnly();
+            assert !session.isReadOnly(company);
+            company.setName("Updated Company");
+        });
+
+        assert companyRepository.findById(companyId).orElseThrow().getName().equals("Updated Company");
+
+        databaseService.shutdown();
+    }
+
+    @Test
+    public void roundRobinReplicaTest() {
+        // Both replicas point to the same database as the primary one, the routing is what matters here
+        final var config = applyTestcontainersConfig(new DatabaseServiceConfiguration());
+        config.setReplicaUrls(List.of(config.getUrl(), config.getUrl()));
+        config.setReplicaSelectionStrategy(ReplicaSelectionStrategy.ROUND_ROBIN);
+        final var databaseService = new IrminsulDatabaseService(config);
+        databaseService.initialize(
+                Company.class,
+                Employee.class
+        );
+
+        assert databaseService.getReplicaSessionFactories().size() == 2;
+
+        final var companyRepository = new CompanyRepository(databaseService);
+        final var companyId = companyRepository.save(Company.create("Replica Company")).getId();
+
+        final var firstFactory = databaseService.runInReadOnlyTransaction(session -> {
+            return session.getSessionFactory();
+        });
+        final var secondFactory = databaseService.runInReadOnlyTransaction(session -> {
+            return session.getSessionFactory();
+        });
+
+        assert databaseService.getSessionFactory() != firstFactory;
+        assert databaseService.getSessionFactory() != secondFactory;
+        assert firstFactory != secondFactory;
+
+        // Read-write transactions are always run on the primary database
+        databaseService.runInThreadTransaction(session -> {
+            assert databaseService.getSessionFactory() == session.getSessionFactory();
+            assert companyRepository.findById(companyId).isPresent();
+        });
+
+        assert companyRepository.findById(companyId).orElseThrow().getName().equals("Replica Company");
+
+        databaseService.shutdown();
+    }
+
+    @Test
+    public void leastActiveReplicaTest() {
+        final var config = applyTestcontainersConfig(new DatabaseServiceConfiguration());
+        config.setReplicaUrls(List.of(config.getUrl(), config.getUrl()));
+        config.setReplicaSelectionStrategy(ReplicaSelectionStrategy.LEAST_ACTIVE);
+        final var databaseService = new IrminsulDatabaseService(config);
+        databaseService.initialize(
+                Company.class,
+                Employee.class
+        );
+
+        final var replicas = databaseService.getReplicaSessionFactories();
+
+        databaseService.runInReadOnlyTransaction(session -> {
+            final var busyReplica = replicas.stream()
+                    .filter(replica -> replica.getSessionFactory() == session.getSessionFactory())
+                    .findFirst()
+                    .orElseThrow();
+            assert busyReplica.getActiveTransactionCount() == 1;
+
+            // Selected replica must not be the busy one
+            final var selectedReplica = databaseService.selectReplica();
+            assert busyReplica != selectedReplica;
+        });
+
+        for (var replica : replicas) {
+            assert replica.getActiveTransactionCount() == 0;
+        }
+
+        databaseService.shutdown();
+    }
+
+    @Test
+    public void asyncTransactionTest() {
+        final var databaseService = new IrminsulDatabaseService(applyTestcontainersConfig(new DatabaseServiceConfiguration()));
+        databaseService.initialize(
+                Company.class,
+                Employee.class
+        );
+
+        final var companyRepository = new CompanyRepository(databaseService);
+
+        // After commit actions are run before the future is completed
+        final List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            final int finalIndex = i;
+            final var afterCommitRan = new AtomicBoolean();
+            futures.add(databaseService.runInTransactionAsync(session -> {
+                companyRepository.save(Company.create("Async Company " + finalIndex));
+                IrminsulContext.addAfterCommitAction(() -> afterCommitRan.set(true));
+                return null;
+            }).thenApply(result -> afterCommitRan.get()));
+        }
+        for (CompletableFuture<Boolean> future : futures) {
+            assert future.join();
+        }
+
+        final var count = databaseService.runInReadOnlyTransactionAsync(session -> {
+            return companyRepository.findByCriteria((root, query, cb) -> cb.like(root.<String>get("name"), "Async Company %")).size();
+        }).join();
+        assert count == 20 : "Expected 20 companies, found: " + count;
+
+        // Rollback actions are run before the future is completed exceptionally
+        final var rollbackRan = new AtomicBoolean();
+        final var failedFuture = databaseService.runInTransactionAsync((Consumer<Session>) session -> {
+            IrminsulContext.addRollbackAction(() -> rollbackRan.set(true));
+            throw new RuntimeException("Simulated exception to trigger rollback");
+        });
+        try {
+            failedFuture.join();
+            assert false : "Expected the future to be completed exceptionally";
+        } catch (CompletionException exception) {
+            assert exception.getCause() instanceof TransactionException;
+        }
+        assert rollbackRan.get();
+
+        databaseService.shutdown();
+    }
+
+    @Test
+    public void retryTransientFailuresTest() {
+        final var config = applyTestcontainersConfig(new DatabaseServiceConfiguration());
+        config.setRetryPolicy(TransactionRetryPolicy.builder()
+                .maxAttempts(3)
+                .initialBackoff(Duration.ofMillis(1))
+                .build());
+        final var databaseService = new IrminsulDatabaseService(config);
+        databaseService.initialize(
+                Company.class,
+                Employee.class
+        );
+
+        final var companyRepository = new CompanyRepository(databaseService);
+
+        // Succeeds on the second attempt, rollback actions run for the failed one
+        final var attempts = new AtomicInteger();
+        final var rollbacks = new AtomicInteger();
+        final var company = databaseService.runInThreadTransaction(session -> {
+            IrminsulContext.addRollbackAction(rollbacks::incrementAndGet);
+            final var savedCompany = companyRepository.save(Company.create("Retried Company"));
+            if (attempts.incrementAndGet() == 1) {
+                throw new RuntimeException(new SQLException("Simulated serialization failure", "40001"));
+            }
+            return savedCompany;
+        });
+
+        assert attempts.get() == 2;
+        assert rollbacks.get() == 1;
+        assert databaseService.getTransactionRetryCount() == 1;
+        assert companyRepository.findByCriteria((root, query, cb) -> cb.equal(root.get("name"), "Retried Company")).size() == 1;
+        assert companyRepository.existsById(company.getId());
+
+        // Non-retryable failures are thrown right away
+        final var nonRetryableAttempts = new AtomicInteger();
+        try {
+            databaseService.runInThreadTransaction((Consumer<Session>) session -> {
+                nonRetryableAttempts.incrementAndGet();
+                throw new RuntimeException(new SQLException("Simulated constraint violation", "23505"));
+            });
+            assert false : "Expected non-retryable failure to be thrown";
+        } catch (TransactionException exception) {
+            // Expected exception, do nothing
+        }
+        assert nonRetryableAttempts.get() == 1;
+
+        // Gives up after max attempts
+        final var exhaustedAttempts = new AtomicInteger();
+        try {
+            databaseService.runInThreadTransaction((Consumer<Session>) session -> {
+                exhaustedAttempts.incrementAndGet();
+                throw new RuntimeException(new SQLException("Simulated deadlock", "40P01"));
+            });
+            assert false : "Expected exhausted retries to be thrown";
+        } catch (TransactionException exception) {
+            // Expected exception, do nothing
+        }
+        assert exhaustedAttempts.get() == 3;
+
+        databaseService.shutdown();
+    }
+
+    @Test
+    public void requiresNewTest() {
+        final var databaseService = new IrminsulDatabaseService(applyTestcontainersConfig(new DatabaseServiceConfiguration()));
+        databaseService.initialize(
+                Company.class,
+                Employee.class
+        );
+
+        final var companyRepository = new CompanyRepository(databaseService);
+        final var outerCompanyId = new AtomicReference<Long>();
+        final var innerCompanyId = new AtomicReference<Long>();
+
+        // Inner transaction is committed even though the outer one is rolled back
+        try {
+            databaseService.runInThreadTransaction((Consumer<Session>) session -> {
+                final var outerCtxId = IrminsulContext.getCurrent().getID();
+                outerCompanyId.set(companyRepository.save(Company.create("Outer Company")).getId());
+
+                databaseService.runInThreadTransaction(TransactionOptions.REQUIRES_NEW, innerSession -> {
+                    assert !outerCtxId.equals(IrminsulContext.getCurrent().getID());
+                    innerCompanyId.set(companyRepository.save(Company.create("Inner Company")).getId());
+                });
+
+                // Outer context is resumed
+                assert outerCtxId.equals(IrminsulContext.getCurrent().getID());
+                throw new RuntimeException("Simulated exception to trigger rollback");
+            });
+            assert false : "Expected the outer transaction to be rolled back";
+        } catch (TransactionException exception) {
+            // Expected exception, do nothing
+        }
+
+        assert !companyRepository.existsById(outerCompanyId.get());
+        assert companyRepository.existsById(innerCompanyId.get());
+
+        databaseService.shutdown();
+    }
+
+    @Test
+    public void nestedTest() {
+        final var databaseService = new IrminsulDatabaseService(applyTestcontainersConfig(new DatabaseServiceConfiguration()));
+        databaseService.initialize(
+                Company.class,
+                Employee.class
+        );
+
+        final var companyRepository = new CompanyRepository(databaseService);
+        final var outerCompanyId = new AtomicReference<Long>();
+        final var nestedCompanyId = new AtomicReference<Long>();
+        final var committedCompanyId = new AtomicReference<Long>();
+        final var nestedRollbackRan = new AtomicBoolean();
+        final var nestedAfterCommitRan = new AtomicBoolean();
+
+        // Only the failed nested transaction is rolled back
+        databaseService.runInThreadTransaction(session -> {
+            outerCompanyId.set(companyRepository.save(Company.create("Outer Company")).getId());
+
+            try {
+                databaseService.runInThreadTransaction(TransactionOptions.NESTED, (Consumer<Session>) nestedSession -> {
+                    IrminsulContext.addRollbackAction(() -> nestedRollbackRan.set(true));
+                    IrminsulContext.addAfterCommitAction(() -> nestedAfterCommitRan.set(true));
+                    nestedCompanyId.set(companyRepository.save(Company.create("Nested Company")).getId());
+                    nestedSession.flush(); // Insert is executed before the rollback to savepoint
+                    throw new RuntimeException("Simulated exception to trigger nested rollback");
+                });
+                assert false : "Expected the nested transaction to be rolled back";
+            } catch (TransactionException exception) {
+                // Expected exception, do nothing
+            }
+
+            databaseService.runInThreadTransaction(TransactionOptions.NESTED, nestedSession -> {
+                committedCompanyId.set(companyRepository.save(Company.create("Committed Nested Company")).getId());
+            });
+        });
+
+        assert nestedRollbackRan.get();
+        assert !nestedAfterCommitRan.get();
+        assert companyRepository.existsById(outerCompanyId.get());
+        assert !companyRepository.existsById(nestedCompanyId.get());
+        assert companyRepository.existsById(committedCompanyId.get());
+
+        databaseService.shutdown();
+    }
+
+    @Test
+    public void nestedConstraintViolationTest() {
+        final var databaseService = new IrminsulDatabaseService(applyTestcontainersConfig(new DatabaseServiceConfiguration()));
+        databaseService.initialize(
+                Company.class,
+                Employee.class
+        );
+
+        final var companyRepository = new CompanyRepository(databaseService);
+        final var companyId = companyRepository.save(Company.create("Loaded Company")).getId();
+        final var outerCompanyId = new AtomicReference<Long>();
+
+        // Database failure of a nested transaction must not roll back or detach the work of the outer one
+        databaseService.runInThreadTransaction(session -> {
+            final var company = session.find(Company.class, companyId);
+            outerCompanyId.set(companyRepository.save(Company.create("Outer Violation Company")).getId());
+
+            try {
+                databaseService.runInThreadTransaction(TransactionOptions.NESTED, nestedSession -> {
+                    company.setName("Nested Renamed Company");
+                    final var missingCompany = Company.create("Missing Company");
+                    missingCompany.setId(Long.MAX_VALUE);
+                    // Foreign key is violated once the nested transaction is flushed
+                    nestedSession.persist(Employee.create("Orphan Employee", missingCompany));
+                });
+                assert false : "Expected the nested transaction to fail on the foreign key violation";
+            } catch (TransactionException exception) {
+                // Expected exception, do nothing
+            }
+
+            assert session.contains(company);
+            assert company.getName().equals("Loaded Company");
+            company.setName("Outer Renamed Company");
+        });
+
+        assert companyRepository.existsById(outerCompanyId.get());
+        assert companyRepository.findById(companyId).orElseThrow().getName().equals("Outer Renamed Company");
+        assert databaseService.runInThreadTransaction(session -> {
+            return session.createQuery("select count(e) from Employee e where e.name = 'Orphan Employee'", Long.class)
+                    .getSingleResult();
+        }) == 0;
+
+        databaseService.shutdown();
+    }
+
+    @Test
+    public void transactionTimeoutTest() {
+        final var databaseService = new IrminsulDatabaseService(applyTestcontainersConfig(new DatabaseServiceConfiguration()));
+        databaseService.initialize(
+                Company.class,
+                Employee.class
+        );
+
+        final var companyRepository = new CompanyRepository(databaseService);
+        final var options = TransactionOptions.builder().timeout(Duration.ofMillis(500)).build();
+
+        // Completes within the timeout
+        final var companyId = databaseService.runInThreadTransaction(options, session -> {
+            return companyRepository.save(Company.create("Timeout Company")).getId();
+        });
+        assert companyRepository.existsById(companyId);
+
+        // Repository queries fail fast after the timeout is exceeded and the transaction is rolled back
+        final var rollbackRan = new AtomicBoolean();
+        final var timedOutCompanyId = new AtomicReference<Long>();
+        try {
+            databaseService.runInThreadTransaction(options, (Consumer<Session>) session -> {
+                IrminsulContext.addRollbackAction(() -> rollbackRan.set(true));
+                timedOutCompanyId.set(companyRepository.save(Company.create("Timed out Company")).getId());
+                sleep(Duration.ofMillis(600));
+                companyRepository.findAll();
+            });
+            assert false : "Expected the transaction to time out";
+        } catch (TransactionTimeoutException exception) {
+            // Expected exception, do nothing
+        }
+        assert rollbackRan.get();
+        assert !companyRepository.existsById(timedOutCompanyId.get());
+
+        // Transaction exceeding the timeout is not committed
+        try {
+            databaseService.runInThreadTransaction(options, (Consumer<Session>) session -> {
+                sleep(Duration.ofMillis(600));
+            });
+            assert false : "Expected the transaction to time out";
+        } catch (TransactionTimeoutException exception) {
+            // Expected exception, do nothing
+        }
+
+        databaseService.shutdown();
+    }
+
+    private static void sleep(Duration duration) {
+        try {
+            Thread.sleep(duration.toMillis());
+        } catch (InterruptedException exception) {
+            throw new RuntimeException(exception);
+        }
+    }
+
+    @Test
+    public void namedTransactionMetricsTest() {
+        final var databaseService = new IrminsulDatabaseService(applyTestcontainersConfig(new DatabaseServiceConfiguration()));
+        databaseService.initialize(
+                Company.class,
+                Employee.class
+        );
+
+        final var metrics = new HistogramTransactionMetrics();
+        databaseService.setTransactionMetrics(metrics);
+
+        final var companyRepository = new CompanyRepository(databaseService);
+        final var options = TransactionOptions.builder().name("create-company").build();
+
+        for (int i = 0; i < 10; i++) {
+            final int finalIndex = i;
+            databaseService.runInThreadTransaction(options, session -> {
+                return companyRepository.save(Company.create("Metrics Company " + finalIndex));
+            });
+        }
+
+        try {
+            databaseService.runInThreadTransaction(options, (Consumer<Session>) session -> {
+                throw new RuntimeException("Simulated exception to trigger rollback");
+            });
+        } catch (Exception exception) {
+            // Expected exception, do nothing
+        }
+
+        assert metrics.getTransactionNames().contains("create-company");
+        assert metrics.getSnapshot("create-company", TransactionPhase.BEGIN).getCount() == 11;
+        assert metrics.getSnapshot("create-company", TransactionPhase.BODY).getCount() == 10;
+        assert metrics.getSnapshot("create-company", TransactionPhase.COMMIT).getCount() == 10;
+        assert metrics.getSnapshot("create-company", TransactionPhase.AFTER_COMMIT_ACTIONS).getCount() == 10;
+        assert metrics.getSnapshot("create-company", TransactionPhase.ROLLBACK).getCount() == 1;
+
+        final var commitSnapshot = metrics.getSnapshot("create-company", TransactionPhase.COMMIT);
+        assert commitSnapshot.getP50() <= commitSnapshot.getP99();
+        assert commitSnapshot.getP99() <= commitSnapshot.getMax();
+        assert commitSnapshot.getMax() > 0;
+
+        // Repository methods run in unnamed transactions
+        companyRepository.findAll();
+        assert metrics.getSnapshot(TransactionOptions.DEFAULT_NAME, TransactionPhase.COMMIT).getCount() == 1;
+
+        // Streams record their phases once closed
+        try (var stream = companyRepository.streamAll()) {
+            assert stream.count() >= 10;
+            assert metrics.getSnapshot(TransactionOptions.DEFAULT_NAME, TransactionPhase.BODY).getCount() == 1;
+        }
+        assert metrics.getSnapshot(TransactionOptions.DEFAULT_NAME, TransactionPhase.BEGIN).getCount() == 2;
+        assert metrics.getSnapshot(TransactionOptions.DEFAULT_NAME, TransactionPhase.BODY).getCount() == 2;
+        assert metrics.getSnapshot(TransactionOptions.DEFAULT_NAME, TransactionPhase.COMMIT).getCount() == 2;
+
+        databaseService.shutdown();
+    }
+}
@@ -3,7 +3,7 @@ package enterprises.iwakura.irminsul.repository;
 import enterprises.iwakura.irminsul.IrminsulDatabaseService;
 import enterprises.iwakura.irminsul.entity.Company;
 
-public class CompanyRepository extends BaseRepository<Company, Long> {
+public class CompanyRepository extends BaseRepository<Company, Long> implements RepositoryExtension<Company> {
 
     /**
      * Initializes the repository with the database service.